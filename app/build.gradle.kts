@@ -32,6 +32,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":engine"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.games.activity)
@@ -0,0 +1,28 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.os.Trace;
+
+/**
+ * Sends {@link Tracer} sections and counters on to android.os.Trace, so they
+ * show up in Perfetto and systrace captures next to the framework's own.
+ */
+final class AndroidTraceMirror implements Tracer.Mirror {
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+
+    @Override
+    public void setCounter(String name, long value) {
+        // Counters cost a string format in the framework, so only while a capture is running.
+        if (Trace.isEnabled()) {
+            Trace.setCounter(name, value);
+        }
+    }
+}
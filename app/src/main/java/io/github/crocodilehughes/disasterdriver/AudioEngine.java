@@ -0,0 +1,148 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The one audio output of the process: a single render thread that owns a
+ * single AudioTrack and an {@link AudioMixer}. Everything else talks to it by
+ * pushing commands, so switching between menu and race never rebuilds native
+ * audio objects.
+ *
+ * The track runs at the device's native sample rate and burst size, and an
+ * {@link AudioOutput} keeps its buffer as small as the device allows.
+ *
+ * {@link #get} only starts the render thread, which builds the wavetables,
+ * the pre-rendered notes and the track itself before it starts rendering.
+ * Commands sent meanwhile wait in the queue.
+ *
+ * {@link #send} must only be called from the main thread.
+ */
+public final class AudioEngine {
+
+    private static final String TAG = "AudioEngine";
+    // Used if the device won't say what it prefers.
+    private static final int FALLBACK_SAMPLE_RATE = 44100;
+    private static final int FALLBACK_FRAMES_PER_BURST = 256;
+    // Covers the menu theme and the game-over melody with room to spare.
+    private static final long NOTE_CACHE_BYTES = 512 * 1024;
+
+    private static AudioEngine instance;
+
+    private final Context context;
+    private final AudioCommandQueue commands = new AudioCommandQueue(256);
+    // Made up front so the race's frame metrics can hold them before the output exists.
+    private final LatencyHistogram writeTimes = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Thread renderThread;
+
+    // Set once by the render thread when it has built everything.
+    private volatile int sampleRate;
+    private volatile AudioOutput output;
+    // Render thread only.
+    private AudioMixer mixer;
+
+    /** Cheap, so fine on the main thread: the expensive part runs on the render thread. */
+    public static synchronized AudioEngine get(Context context) {
+        if (instance == null) {
+            instance = new AudioEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AudioEngine(Context context) {
+        this.context = context;
+        renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Tracer.setThreadCapacity(AudioOutput.TRACE_CAPACITY);
+                build();
+                renderLoop();
+            }
+        }, "AudioRender");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /** Render thread, before the loop starts. Runs at background priority so it doesn't hold up the UI. */
+    private void build() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        long start = SystemClock.uptimeMillis();
+        AudioManager audioManager = context.getSystemService(AudioManager.class);
+        int rate = readProperty(audioManager, AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE, FALLBACK_SAMPLE_RATE);
+        int framesPerBurst = readProperty(audioManager, AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER,
+                FALLBACK_FRAMES_PER_BURST);
+
+        mixer = new AudioMixer(rate, new NoteCache(rate, NOTE_CACHE_BYTES));
+        output = new AudioOutput(new AudioTrackSink(rate, framesPerBurst, AudioOutput.MAX_BURSTS), mixer,
+                writeTimes, latency);
+        sampleRate = rate;
+        Log.i(TAG, "Output " + rate + " Hz, " + framesPerBurst + " frames per burst, built in "
+                + (SystemClock.uptimeMillis() - start) + " ms");
+    }
+
+    private static int readProperty(AudioManager audioManager, String key, int fallback) {
+        String value = audioManager != null ? audioManager.getProperty(key) : null;
+        if (value == null)
+            return fallback;
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed > 0 ? parsed : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public void send(int command, double arg) {
+        if (!commands.offer(command, arg)) {
+            Log.w(TAG, "Audio command queue full, dropped command " + command);
+        }
+        LockSupport.unpark(renderThread);
+    }
+
+    /** Silences everything while no activity is visible; main thread only, like {@link #send}. */
+    public void setSuspended(boolean suspended) {
+        send(AudioMixer.CMD_SET_SUSPENDED, suspended ? 1 : 0);
+    }
+
+    /** 0 until the render thread has built the output. */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** Buffer size, underruns and latency of the output; null until it's built. */
+    public AudioOutput getOutput() {
+        return output;
+    }
+
+    /** How long each burst took to write; the same histogram the output records into. */
+    public LatencyHistogram getWriteTimes() {
+        return writeTimes;
+    }
+
+    /** Write-to-speaker latency; the same histogram the output records into. */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    private void renderLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+        while (true) {
+            commands.drainTo(mixer);
+
+            // Blocking writes pace the loop to the hardware, one burst at a time so
+            // a pitch change is heard within a burst or two. With nothing to play,
+            // or muted, or in the background, the track is stopped and the thread
+            // sleeps until the next command arrives.
+            if (!output.update() && commands.isEmpty()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+}
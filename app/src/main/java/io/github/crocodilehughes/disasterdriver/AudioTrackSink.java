@@ -0,0 +1,104 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+
+/**
+ * {@link AudioSink} over a streaming AudioTrack opened at the device's native
+ * rate in low-latency mode, so it can get a fast mixer track with no resampling.
+ */
+final class AudioTrackSink implements AudioSink {
+
+    private final AudioTrack track;
+    private final int sampleRate;
+    private final int framesPerBurst;
+    private final AudioTimestamp audioTimestamp = new AudioTimestamp();
+
+    AudioTrackSink(int sampleRate, int framesPerBurst, int maxBursts) {
+        this.sampleRate = sampleRate;
+        this.framesPerBurst = framesPerBurst;
+
+        // Ask for enough room to grow into; the size in use starts much smaller.
+        int minBytes = AudioTrack.getMinBufferSize(sampleRate,
+                AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        int capacityBytes = Math.max(minBytes, maxBursts * framesPerBurst * 2);
+
+        track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_GAME)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                .setBufferSizeInBytes(capacityBytes)
+                .build();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getFramesPerBurst() {
+        return framesPerBurst;
+    }
+
+    @Override
+    public int getBufferCapacityFrames() {
+        return track.getBufferCapacityInFrames();
+    }
+
+    @Override
+    public int setBufferSizeFrames(int frames) {
+        int applied = track.setBufferSizeInFrames(frames);
+        return applied > 0 ? applied : track.getBufferSizeInFrames();
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return track.getUnderrunCount();
+    }
+
+    @Override
+    public void play() {
+        track.play();
+    }
+
+    @Override
+    public void stop() {
+        track.stop();
+    }
+
+    @Override
+    public void pause() {
+        track.pause();
+    }
+
+    @Override
+    public void flush() {
+        track.flush();
+    }
+
+    @Override
+    public int write(short[] buffer, int frames) {
+        return track.write(buffer, 0, frames, AudioTrack.WRITE_BLOCKING);
+    }
+
+    @Override
+    public boolean getTimestamp(Timestamp out) {
+        if (!track.getTimestamp(audioTimestamp))
+            return false;
+        out.framePosition = audioTimestamp.framePosition;
+        out.nanoTime = audioTimestamp.nanoTime;
+        return true;
+    }
+}
@@ -0,0 +1,208 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The player's car flattened into one bitmap per (car color, decal, decal
+ * color) combination, at the size the race draws it, so a frame draws one
+ * texture instead of three tinted vector layers.
+ *
+ * The menu asks for a combination as soon as the player picks it and it's
+ * rasterized on a background thread; by the time the race starts it's usually
+ * there. The few most recent combinations are kept.
+ */
+final class CarSpriteCache {
+
+    /** Called on the executor given to {@link #prepare} once the sprite is ready. */
+    interface Listener {
+        void onSpriteReady(long key, Bitmap sprite);
+    }
+
+    private static final String TAG = "CarSpriteCache";
+    // About 1.3 MB each at 3x density.
+    private static final int MAX_SPRITES = 6;
+
+    private static CarSpriteCache instance;
+
+    private final Context context;
+    private final int size;
+    private final ExecutorService builder;
+    // Guarded by this. Most recently used last.
+    private final LinkedHashMap<Long, Bitmap> sprites = new LinkedHashMap<Long, Bitmap>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Bitmap> eldest) {
+            // Not recycled: a renderer may still be drawing it, and the GC will have it after.
+            return size() > MAX_SPRITES;
+        }
+    };
+    private final Map<Long, Future<Bitmap>> building = new HashMap<>();
+
+    static synchronized CarSpriteCache get(Context context) {
+        if (instance == null) {
+            instance = new CarSpriteCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CarSpriteCache(Context context) {
+        this.context = context;
+        size = RaceRenderer.getCarSpriteSize(context.getResources().getDisplayMetrics().density);
+        builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "CarSprites");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** A disabled decal's color doesn't matter, so those combinations share a key. */
+    static long key(int carColor, boolean decalEnabled, int decalColor) {
+        // Decal colors are opaque, so 0 (transparent) can stand for no decal.
+        return ((long) carColor << 32) | ((decalEnabled ? decalColor : 0) & 0xFFFFFFFFL);
+    }
+
+    /** The sprite if it's already built, otherwise null. Any thread. */
+    synchronized Bitmap getIfReady(int carColor, boolean decalEnabled, int decalColor) {
+        return sprites.get(key(carColor, decalEnabled, decalColor));
+    }
+
+    /**
+     * Starts building the sprite in the background if it isn't cached or on its
+     * way. Only the latest pick matters, so builds still queued for any other
+     * combination are dropped.
+     */
+    void prepare(int carColor, boolean decalEnabled, int decalColor,
+            final Executor executor, final Listener listener) {
+        final long key = key(carColor, decalEnabled, decalColor);
+        final Bitmap ready;
+        synchronized (this) {
+            ready = sprites.get(key);
+            if (ready == null) {
+                cancelAllBut(key);
+                submit(key, carColor, decalEnabled, decalColor);
+                final Future<Bitmap> pending = building.get(key);
+                // Waits on the builder thread behind the build itself, so nothing here blocks.
+                builder.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final Bitmap sprite = await(pending);
+                        if (sprite == null)
+                            return;
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                listener.onSpriteReady(key, sprite);
+                            }
+                        });
+                    }
+                });
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onSpriteReady(key, ready);
+            }
+        });
+    }
+
+    // Guarded by this. One already being built is left to finish; it's about to be cached anyway.
+    private void cancelAllBut(long key) {
+        Iterator<Map.Entry<Long, Future<Bitmap>>> it = building.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Future<Bitmap>> entry = it.next();
+            if (entry.getKey() != key && entry.getValue().cancel(false)) {
+                it.remove();
+            }
+        }
+    }
+
+    // Guarded by this.
+    private void submit(final long key, final int carColor, final boolean decalEnabled, final int decalColor) {
+        if (building.containsKey(key))
+            return;
+        building.put(key, builder.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                Bitmap sprite = null;
+                try {
+                    sprite = build(carColor, decalEnabled, decalColor);
+                    return sprite;
+                } finally {
+                    synchronized (CarSpriteCache.this) {
+                        if (sprite != null) {
+                            sprites.put(key, sprite);
+                        }
+                        building.remove(key);
+                    }
+                }
+            }
+        }));
+    }
+
+    private static Bitmap await(Future<Bitmap> pending) {
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not build car sprite", e.getCause());
+        } catch (CancellationException e) {
+            // The player picked something else first.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /** Rasterizes the layers the way the race used to draw them each frame. */
+    private Bitmap build(int carColor, boolean decalEnabled, int decalColor) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawLayer(canvas, R.drawable.ic_racer_body, carColor);
+        if (decalEnabled) {
+            drawLayer(canvas, R.drawable.ic_racer_decal, decalColor);
+        }
+        drawLayer(canvas, R.drawable.ic_racer_details, 0);
+        // Uploads it to the GPU now rather than on the first frame that draws it.
+        bitmap.prepareToDraw();
+        return bitmap;
+    }
+
+    // A tint of 0 leaves the layer its own colors.
+    private void drawLayer(Canvas canvas, int drawableId, int tint) {
+        Drawable layer = context.getDrawable(drawableId).mutate();
+        if (tint != 0) {
+            layer.setColorFilter(new PorterDuffColorFilter(tint, PorterDuff.Mode.SRC_ATOP));
+        }
+        layer.setBounds(0, 0, size, size);
+        layer.draw(canvas);
+    }
+}
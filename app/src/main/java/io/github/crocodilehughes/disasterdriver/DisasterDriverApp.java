@@ -0,0 +1,183 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Warms up everything the menu and the race need while the menu is still
+ * being created: the audio engine (which builds its track, wavetables and
+ * pre-rendered notes on its own render thread), the race drawables, the race
+ * layout and the run history. Each job runs on a small background pool so
+ * none of it lands on the main thread's first frames.
+ *
+ * Also times cold start (process start to the menu's first frame) and
+ * menu-to-race (Start pressed to the race's first frame), and suspends the
+ * audio engine whenever none of the app's activities is visible.
+ */
+public class DisasterDriverApp extends Application {
+
+    private static final String TAG = "DisasterDriverApp";
+    private static final int WARM_UP_THREADS = 2;
+
+    private static volatile long coldStartMillis = -1;
+    private static volatile long raceRequestedAt = -1;
+    private static volatile long menuToRaceMillis = -1;
+
+    // Main thread only.
+    private int startedActivities;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Tracer.setMirror(new AndroidTraceMirror());
+        // Only starts the audio thread, which builds the wavetables, every note of the
+        // theme and melody, and the track on its own while the rest warms up here.
+        AudioEngine.get(this);
+        ExecutorService warmUp = Executors.newFixedThreadPool(WARM_UP_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        // Some views make a Handler when constructed.
+                        Looper.prepare();
+                        r.run();
+                    }
+                }, "WarmUp");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        warmUp.execute(new WarmUpTask("drawables") {
+            @Override
+            void warmUp() {
+                // Parsing the vectors once leaves their constant state in the resource
+                // cache, so the renderer's getDrawable calls only clone it.
+                getDrawable(R.drawable.background_road);
+                getDrawable(R.drawable.ic_racer_body);
+                getDrawable(R.drawable.ic_racer_decal);
+                getDrawable(R.drawable.ic_racer_details);
+                getDrawable(R.drawable.ic_cone);
+            }
+        });
+        warmUp.execute(new WarmUpTask("race layout") {
+            @Override
+            void warmUp() {
+                // Thrown away; this loads the view classes and caches the parsed layout.
+                LayoutInflater.from(new ContextThemeWrapper(DisasterDriverApp.this, R.style.Theme_FirstGame))
+                        .inflate(R.layout.activity_main, null, false);
+            }
+        });
+        warmUp.execute(new WarmUpTask("run history") {
+            @Override
+            void warmUp() {
+                Leaderboard.get(DisasterDriverApp.this);
+            }
+        });
+        warmUp.shutdown();
+
+        registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityStarted(Activity activity) {
+                // Counted rather than tracked per activity: going from the menu to the
+                // race starts the race before the menu stops, so this never hits 0.
+                if (startedActivities++ == 0) {
+                    AudioEngine.get(DisasterDriverApp.this).setSuspended(false);
+                }
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+                if (--startedActivities == 0) {
+                    AudioEngine.get(DisasterDriverApp.this).setSuspended(true);
+                }
+            }
+
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+            }
+        });
+    }
+
+    private abstract static class WarmUpTask implements Runnable {
+        private final String name;
+
+        WarmUpTask(String name) {
+            this.name = name;
+        }
+
+        abstract void warmUp();
+
+        @Override
+        public void run() {
+            long start = SystemClock.uptimeMillis();
+            try {
+                warmUp();
+            } catch (RuntimeException e) {
+                // Warming up is only an optimisation; the real code path will retry.
+                Log.w(TAG, "Warm-up of " + name + " failed", e);
+                return;
+            }
+            Log.i(TAG, "warm_up." + name + "_ms=" + (SystemClock.uptimeMillis() - start));
+        }
+    }
+
+    /** Main thread, once the menu has drawn its first frame. Only the first call counts. */
+    static void onMenuDrawn() {
+        if (coldStartMillis >= 0)
+            return;
+        coldStartMillis = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        Log.i(TAG, "cold_start_ms=" + coldStartMillis);
+    }
+
+    /** Main thread, when Start is pressed. */
+    static void onRaceRequested() {
+        raceRequestedAt = SystemClock.uptimeMillis();
+        menuToRaceMillis = -1;
+    }
+
+    /** Any thread, when the race has drawn its first frame. */
+    static void onRaceDrawn() {
+        long requestedAt = raceRequestedAt;
+        if (requestedAt < 0)
+            return;
+        raceRequestedAt = -1;
+        menuToRaceMillis = SystemClock.uptimeMillis() - requestedAt;
+        Log.i(TAG, "menu_to_race_ms=" + menuToRaceMillis);
+    }
+
+    /** Adds the launch timings to a key=value report, -1 where not measured. */
+    static void appendReport(StringBuilder out) {
+        out.append("cold_start_ms=").append(coldStartMillis).append('\n');
+        out.append("menu_to_race_ms=").append(menuToRaceMillis).append('\n');
+    }
+}
@@ -0,0 +1,235 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.Display;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * Hosts the race scene on its own surface and render thread. Each frame the
+ * thread calls {@link FrameHandler#onFrame} to advance the game, then draws
+ * the whole scene in one Canvas pass. Posting the canvas blocks until the
+ * next buffer is free, which paces the loop to the display.
+ *
+ * The game simulates in fixed ticks and draws interpolated between them, so it
+ * plays the same at any refresh rate; the surface asks for the fastest one the
+ * display has so motion is as smooth as the panel allows.
+ */
+public class GameSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    /** All methods are called on the render thread. */
+    public interface FrameHandler {
+        void onSurfaceSize(int width, int height);
+
+        /**
+         * Advance the game by the time since the previous frame (0 on the first
+         * one). frameTimeNanos is when this frame started, in System.nanoTime().
+         */
+        void onFrame(long frameTimeNanos, long frameNanos);
+
+        void onDraw(Canvas canvas);
+
+        /** The frame just drawn has been handed to the compositor. */
+        void onFramePosted(long postedNanos);
+    }
+
+    // Asked for while the device is running hot. Every display can do at least this.
+    static final float THROTTLED_FRAME_RATE = 60f;
+
+    private static final String TRACE_LOCK = "frame.lock";
+    private static final String TRACE_POST = "frame.post";
+
+    private FrameHandler frameHandler;
+    private RenderThread renderThread;
+    // Main thread only; 0 for no preference.
+    private float frameRate;
+    // Guarded by the render thread's lock once it exists, otherwise only touched on the main thread.
+    private boolean animating;
+
+    public GameSurfaceView(Context context) {
+        super(context);
+        getHolder().addCallback(this);
+    }
+
+    public GameSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        getHolder().addCallback(this);
+    }
+
+    public void setFrameHandler(FrameHandler frameHandler) {
+        this.frameHandler = frameHandler;
+    }
+
+    /** The fastest refresh rate the display offers without changing resolution. */
+    public static float getBestRefreshRate(Display display) {
+        Display.Mode current = display.getMode();
+        float best = display.getRefreshRate();
+        for (Display.Mode mode : display.getSupportedModes()) {
+            if (mode.getPhysicalWidth() == current.getPhysicalWidth()
+                    && mode.getPhysicalHeight() == current.getPhysicalHeight()) {
+                best = Math.max(best, mode.getRefreshRate());
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Asks the display to run at this rate while the surface is showing; the
+     * system may still pick something lower (battery saver, other windows).
+     * Main thread only.
+     */
+    public void setFrameRate(float frameRate) {
+        if (frameRate == this.frameRate)
+            return;
+        this.frameRate = frameRate;
+        Surface surface = getHolder().getSurface();
+        if (surface.isValid()) {
+            // Mid-race, only switch if the display can do it without blanking.
+            surface.setFrameRate(frameRate, Surface.FRAME_RATE_COMPATIBILITY_DEFAULT,
+                    Surface.CHANGE_FRAME_RATE_ONLY_IF_SEAMLESS);
+        }
+    }
+
+    /**
+     * While animating the scene is redrawn every vsync. Otherwise the render
+     * thread draws once and sleeps, e.g. during the countdown and after a crash.
+     * Safe to call from any thread.
+     */
+    public void setAnimating(boolean animating) {
+        RenderThread thread = renderThread;
+        if (thread == null) {
+            this.animating = animating;
+            return;
+        }
+        synchronized (thread.lock) {
+            this.animating = animating;
+            thread.lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        if (frameRate > 0) {
+            // Nothing has been drawn yet, so a mode switch that blanks the screen is fine.
+            holder.getSurface().setFrameRate(frameRate, Surface.FRAME_RATE_COMPATIBILITY_DEFAULT,
+                    Surface.CHANGE_FRAME_RATE_ALWAYS);
+        }
+        renderThread = new RenderThread(holder);
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        RenderThread thread = renderThread;
+        if (thread == null)
+            return;
+        synchronized (thread.lock) {
+            thread.width = width;
+            thread.height = height;
+            thread.sizeChanged = true;
+            thread.lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        RenderThread thread = renderThread;
+        if (thread == null)
+            return;
+        synchronized (thread.lock) {
+            thread.quit = true;
+            thread.lock.notifyAll();
+        }
+        // The surface is gone once we return, so the thread must be done with it.
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        renderThread = null;
+    }
+
+    private final class RenderThread extends Thread {
+        final Object lock = new Object();
+        private final SurfaceHolder holder;
+        boolean quit;
+        boolean sizeChanged;
+        int width;
+        int height;
+
+        RenderThread(SurfaceHolder holder) {
+            super("GameRender");
+            this.holder = holder;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+            try {
+                renderLoop();
+            } finally {
+                // A new render thread comes with every surface; don't keep this one's trace ring.
+                Tracer.releaseThread();
+            }
+        }
+
+        private void renderLoop() {
+            long lastFrameTime = 0;
+
+            while (true) {
+                boolean resized = false;
+                int newWidth = 0;
+                int newHeight = 0;
+                synchronized (lock) {
+                    // Sleep until there is something new to show.
+                    while (!quit && !animating && !sizeChanged) {
+                        lastFrameTime = 0;
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (quit)
+                        return;
+                    if (sizeChanged) {
+                        resized = true;
+                        newWidth = width;
+                        newHeight = height;
+                        sizeChanged = false;
+                    }
+                }
+
+                FrameHandler handler = frameHandler;
+                if (handler == null)
+                    continue;
+                if (resized) {
+                    handler.onSurfaceSize(newWidth, newHeight);
+                }
+
+                long now = System.nanoTime();
+                handler.onFrame(now, lastFrameTime == 0 ? 0 : now - lastFrameTime);
+                lastFrameTime = now;
+
+                // Blocks here when the compositor is a frame or two behind.
+                Tracer.begin(TRACE_LOCK);
+                Canvas canvas = holder.lockHardwareCanvas();
+                Tracer.end();
+                if (canvas == null)
+                    continue;
+                try {
+                    handler.onDraw(canvas);
+                } finally {
+                    Tracer.begin(TRACE_POST);
+                    holder.unlockCanvasAndPost(canvas);
+                    Tracer.end();
+                }
+                handler.onFramePosted(System.nanoTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * The process-wide {@link RunHistory}, opened and loaded in the background the
+ * first time anything asks for it. Asking never touches the disk.
+ */
+final class Leaderboard {
+
+    static final int TOP_RUNS = 10;
+
+    private static RunHistory history;
+
+    private Leaderboard() {
+    }
+
+    static synchronized RunHistory get(Context context) {
+        if (history == null) {
+            final Context app = context.getApplicationContext();
+            // Both of these can hit the disk, so they're only asked on the history's own thread.
+            history = new RunHistory(new RunHistory.Source() {
+                @Override
+                public File getFile() {
+                    return new File(app.getFilesDir(), "run_history.bin");
+                }
+
+                @Override
+                public long getLegacyBestScore() {
+                    // Before the history existed only the best score was kept; it still counts.
+                    return app.getSharedPreferences("GamePrefs", Context.MODE_PRIVATE).getLong("HIGH_SCORE", 0);
+                }
+            }, TOP_RUNS);
+            history.load();
+        }
+        return history;
+    }
+}
@@ -1,44 +1,118 @@
 package io.github.crocodilehughes.disasterdriver;
 
-import android.animation.ValueAnimator;
 import android.os.Bundle;
 import android.os.CountDownTimer;
-import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
 import android.widget.Button;
 import android.widget.ImageButton;
-import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-public class MainActivity extends AppCompatActivity {
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class MainActivity extends AppCompatActivity implements GameSurfaceView.FrameHandler {
+
+    private static final String TAG = "MainActivity";
+    private static final long OVERLAY_REFRESH_MS = 500;
+    // The score goes up every tick; nobody reads it faster than this.
+    private static final long SCORE_REFRESH_NANOS = 100_000_000L;
+    // Per directory of saved race files; older ones are deleted as new ones are written.
+    private static final int MAX_SAVED_RACES = 20;
+    private static final int MAX_SAVED_TRACES = 5;
+    // Share of release-build races that record a trace.
+    private static final double TRACE_SAMPLE_RATE = 0.1;
+    private static final String TRACE_TICK = "race.tick";
+    private static final String TRACE_DRAW = "race.draw";
+    private static final String TRACE_END_GAME = "race.endGame";
+
+    // Writes and prunes the saved race files, one job at a time and in the order
+    // the races ended, so a slow write can't overlap the next race's.
+    private static final ExecutorService RACE_FILES = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "RaceFiles");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
-    private View playerCar;
-    private ImageView playerCarBody;
-    private View road;
-    private View line1, line2, line3, startLine;
-    private View bumperLeft, bumperRight;
+    private GameSurfaceView gameView;
+    private RaceRenderer raceRenderer;
 
-    private boolean isTurningLeft = false;
-    private boolean isTurningRight = false;
-    private boolean raceStarted = false;
+    // Written on the main thread, read by the render thread.
+    private volatile boolean raceStarted = false;
+    // Set on the main thread by Play Again; the render thread resets the world.
+    private volatile boolean restartPending = false;
+    // Main thread only; the render thread learns the race is over from the world.
+    private long raceStartMillis;
     private boolean gameOver = false;
+    // Render thread only.
+    private boolean firstFrameDrawn = false;
     private TextView countdownText;
     private TextView scoreText;
     private Button playAgainButton;
     private Button menuButton;
-    private ValueAnimator animator;
-    private long raceStartTime;
-    private long currentScore = 0;
+    // Written by the render thread, read on the main thread.
+    private volatile long currentScore = 0;
+    private volatile boolean scoreUpdatePending = false;
+    // Render thread only. Frame time of the last score sent to the HUD.
+    private long lastScorePostNanos;
+    // Whether the world turned on the last tick; written by the render thread, read by main.
+    private volatile boolean steering;
+    // Main thread only. Reused so the HUD never builds a String mid-race.
+    private final CounterText scoreLabel = new CounterText("Score: ");
     private int carColor = Color.RED;
     private int decalColor = Color.WHITE;
     private boolean isDecalEnabled = false;
     private EngineSoundSynthesizer synthesizer;
+    private final GameWorld world = new GameWorld();
+    private final StepAccumulator stepAccumulator = new StepAccumulator(GameWorld.TICKS_PER_SECOND, 5);
+    private final InputLog inputLog = new InputLog();
+    // Steering presses from the main thread to the render thread.
+    private final InputQueue inputQueue = new InputQueue(256);
+    private SteeringTouchListener leftTouch;
+    private SteeringTouchListener rightTouch;
+    // Only in tilt mode. Set up before the render thread starts, which then reads the filter.
+    private TiltSensor tiltSensor;
+    private TiltFilter tiltFilter;
+    // Set up in onCreate, before the render thread starts, with the filter if there is one.
+    private RaceLoop raceLoop;
+    private FrameMetrics frameMetrics;
+    private float bestFrameRate;
+    private TextView debugOverlay;
+    private boolean showFrameMetrics = false;
+    private long lastOverlayUpdate = 0;
+    private final StringBuilder overlayText = new StringBuilder();
+    // Main thread only. Where this race's trace starts.
+    private long traceStartNanos;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,25 +122,12 @@ public class MainActivity extends AppCompatActivity {
         carColor = getIntent().getIntExtra("CAR_COLOR", Color.RED);
         isDecalEnabled = getIntent().getBooleanExtra("IS_DECAL_ENABLED", false);
         decalColor = getIntent().getIntExtra("DECAL_COLOR", Color.WHITE);
-        playerCar = findViewById(R.id.player_car);
-        ImageView playerCarDecal = findViewById(R.id.player_car_decal);
-        playerCarDecal.setVisibility(isDecalEnabled ? View.VISIBLE : View.GONE);
-        playerCarDecal.setColorFilter(decalColor);
-        playerCarBody = findViewById(R.id.player_car_body);
-        playerCarBody.setColorFilter(carColor);
-        playerCar.setScaleX(8.0f);
-        playerCar.setScaleY(8.0f);
-        playerCar.setTranslationY(-100.0f);
-        playerCar.setTranslationX(0f); // This guarantees the car starts centered.
-
-        road = findViewById(R.id.road);
-        line1 = findViewById(R.id.line1);
-        line2 = findViewById(R.id.line2);
-        line3 = findViewById(R.id.line3);
-        startLine = findViewById(R.id.start_line);
-        bumperLeft = findViewById(R.id.bumper_left);
-        bumperRight = findViewById(R.id.bumper_right);
+        raceRenderer = new RaceRenderer(this, carColor, isDecalEnabled, decalColor);
+        gameView = findViewById(R.id.game_view);
+        gameView.setFrameHandler(this);
+
         scoreText = findViewById(R.id.score_text);
+        debugOverlay = findViewById(R.id.debug_overlay);
         countdownText = findViewById(R.id.countdown_text);
         playAgainButton = findViewById(R.id.play_again_button);
         menuButton = findViewById(R.id.menu_button);
@@ -74,9 +135,7 @@ public class MainActivity extends AppCompatActivity {
         playAgainButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Intent intent = getIntent();
-                finish();
-                startActivity(intent);
+                restartRace();
             }
         });
 
@@ -87,48 +146,63 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        ImageButton leftButton = findViewById(R.id.left_button);
-        leftButton.setOnTouchListener(new View.OnTouchListener() {
+        leftTouch = new SteeringTouchListener(inputQueue, InputQueue.LEFT) {
             @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!raceStarted || gameOver)
-                    return false;
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        isTurningLeft = true;
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                        isTurningLeft = false;
-                        return true;
-                }
-                return false;
+            boolean isSteering() {
+                return raceStarted && !gameOver && !restartPending;
             }
-        });
-
-        ImageButton rightButton = findViewById(R.id.right_button);
-        rightButton.setOnTouchListener(new View.OnTouchListener() {
+        };
+        rightTouch = new SteeringTouchListener(inputQueue, InputQueue.RIGHT) {
             @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!raceStarted || gameOver)
-                    return false;
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        isTurningRight = true;
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                        isTurningRight = false;
-                        return true;
-                }
-                return false;
+            boolean isSteering() {
+                return raceStarted && !gameOver && !restartPending;
             }
-        });
+        };
+        ImageButton leftButton = findViewById(R.id.left_button);
+        leftButton.setOnTouchListener(leftTouch);
+        ImageButton rightButton = findViewById(R.id.right_button);
+        rightButton.setOnTouchListener(rightTouch);
 
-        synthesizer = new EngineSoundSynthesizer();
+        synthesizer = new EngineSoundSynthesizer(this);
+        // Normally already loaded by the menu; otherwise start reading it now.
+        Leaderboard.get(this);
 
         SharedPreferences prefs = getSharedPreferences("GamePrefs", MODE_PRIVATE);
         boolean isMuted = prefs.getBoolean("IS_MUTED", false);
         synthesizer.setMuted(isMuted);
 
+        if (prefs.getBoolean("TILT_STEERING", false)) {
+            TiltSensor sensor = new TiltSensor(this);
+            // Without an accelerometer, fall back to the buttons.
+            if (sensor.isAvailable()) {
+                tiltSensor = sensor;
+                tiltFilter = sensor.getFilter();
+                leftButton.setVisibility(View.GONE);
+                rightButton.setVisibility(View.GONE);
+            }
+        }
+
+        raceLoop = new RaceLoop(world, stepAccumulator, inputQueue, inputLog, tiltFilter);
+
+        AudioEngine audioEngine = AudioEngine.get(this);
+        frameMetrics = new FrameMetrics(audioEngine.getWriteTimes(), audioEngine.getLatency(),
+                getDisplay().getRefreshRate());
+        bestFrameRate = GameSurfaceView.getBestRefreshRate(getDisplay());
+        gameView.setFrameRate(bestFrameRate);
+        showFrameMetrics = prefs.getBoolean("SHOW_FRAME_METRICS", false);
+        debugOverlay.setVisibility(showFrameMetrics ? View.VISIBLE : View.GONE);
+
+        // Long-press the score to toggle the frame timing overlay.
+        scoreText.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                showFrameMetrics = !showFrameMetrics;
+                prefs.edit().putBoolean("SHOW_FRAME_METRICS", showFrameMetrics).apply();
+                debugOverlay.setVisibility(showFrameMetrics ? View.VISIBLE : View.GONE);
+                return true;
+            }
+        });
+
         ImageButton muteButton = findViewById(R.id.mute_button);
         updateMuteButton(muteButton, isMuted);
 
@@ -154,9 +228,63 @@ public class MainActivity extends AppCompatActivity {
         button.setImageResource(isMuted ? R.drawable.ic_mute_on : R.drawable.ic_mute_off);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        getSystemService(DisplayManager.class).registerDisplayListener(displayListener, null);
+        PowerManager powerManager = getSystemService(PowerManager.class);
+        powerManager.addThermalStatusListener(getMainExecutor(), thermalListener);
+        thermalListener.onThermalStatusChanged(powerManager.getCurrentThermalStatus());
+        frameMetrics.setRefreshRate(getDisplay().getRefreshRate());
+        if (tiltSensor != null) {
+            tiltSensor.start(getDisplay().getRotation());
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        getSystemService(DisplayManager.class).unregisterDisplayListener(displayListener);
+        getSystemService(PowerManager.class).removeThermalStatusListener(thermalListener);
+        if (tiltSensor != null) {
+            tiltSensor.stop();
+        }
+    }
+
+    // The rate we get isn't always the rate we asked for, and the system can change
+    // it mid-race. Missed frames are counted against whatever the display runs at now.
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == getDisplay().getDisplayId()) {
+                frameMetrics.setRefreshRate(getDisplay().getRefreshRate());
+            }
+        }
+
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+    };
+
+    // Running hot, drawing twice as often as needed is the first thing to give up.
+    private final PowerManager.OnThermalStatusChangedListener thermalListener =
+            new PowerManager.OnThermalStatusChangedListener() {
+                @Override
+                public void onThermalStatusChanged(int status) {
+                    boolean hot = status >= PowerManager.THERMAL_STATUS_MODERATE;
+                    gameView.setFrameRate(hot ? Math.min(bestFrameRate, GameSurfaceView.THROTTLED_FRAME_RATE)
+                            : bestFrameRate);
+                }
+            };
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        Tracer.setEnabled(false);
         if (synthesizer != null) {
             synthesizer.stop();
         }
@@ -175,194 +303,326 @@ public class MainActivity extends AppCompatActivity {
 
             public void onFinish() {
                 countdownText.setVisibility(View.GONE);
+                // Only asks; the render and audio threads clear their own numbers.
+                frameMetrics.reset();
+                inputLog.begin(world);
+                raceStartMillis = SystemClock.uptimeMillis();
+                startTracing();
                 raceStarted = true;
-                raceStartTime = System.currentTimeMillis();
                 synthesizer.start();
-                startRoadAnimation();
+                gameView.setAnimating(true);
             }
         }.start();
     }
 
-    private float totalTime = 0f;
+    private final Runnable updatePitchTask = new Runnable() {
+        @Override
+        public void run() {
+            updateEnginePitch();
+        }
+    };
+
+    // Follows the steering the world actually applied, buttons or tilt, not the touches.
+    private void updateEnginePitch() {
+        // Engine Sound Logic
+        if (steering) {
+            synthesizer.setFrequency(180.0); // Lower pitch on turn
+        } else {
+            synthesizer.setFrequency(220.0); // Base pitch
+        }
+    }
+
+    @Override
+    public void onSurfaceSize(int width, int height) {
+        raceRenderer.setSize(width, height);
+        if (raceStarted)
+            return;
+        world.setTrack(width, height, raceRenderer.getRoadLeft(), raceRenderer.getRoadWidth());
+        world.setCar(raceRenderer.getCarCenterY(), raceRenderer.getCarBodyHalfWidth(),
+                raceRenderer.getCarBodyHalfHeight(), raceRenderer.getCarBodyOffsetY());
+        world.setObstacleSize(raceRenderer.getConeHalfWidth(), raceRenderer.getConeHalfHeight());
+        world.setSeed(System.nanoTime());
+        world.reset();
+        stepAccumulator.reset();
+    }
 
-    private float getPseudoRandom(int x) {
-        x = (x << 13) ^ x;
-        return (float) (1.0 - ((x * (x * x * 15731 + 789221) + 1376312589) & 0x7fffffff) / 1073741824.0);
+    @Override
+    public void onFrame(long frameTimeNanos, long frameNanos) {
+        if (restartPending) {
+            restartPending = false;
+            resetRace();
+        }
+        if (!raceStarted || world.isCrashed())
+            return;
+        Tracer.begin(TRACE_TICK);
+        long tickStart = System.nanoTime();
+        tick(frameTimeNanos, frameNanos);
+        frameMetrics.recordFrame(frameNanos, System.nanoTime() - tickStart);
+        Tracer.end();
     }
 
-    private float cosineInterpolate(float a, float b, float x) {
-        float ft = x * 3.1415927f;
-        float f = (1 - (float) Math.cos(ft)) * 0.5f;
-        return a * (1 - f) + b * f;
+    /** Render thread. Puts the world back on the start line with a new obstacle layout. */
+    private void resetRace() {
+        world.setSeed(System.nanoTime());
+        world.reset();
+        stepAccumulator.reset();
+        inputQueue.clear();
+        inputLog.begin(world);
+        frameMetrics.reset();
+        currentScore = 0;
+        steering = false;
     }
 
-    private float getNoise(float x) {
-        int intX = (int) Math.floor(x);
-        float fracX = x - intX;
+    /**
+     * Play Again: starts a new race in this activity, reusing the surface, render
+     * thread, renderer and audio voices, with no countdown.
+     */
+    private void restartRace() {
+        if (!gameOver)
+            return;
+        gameOver = false;
+        countdownText.setVisibility(View.GONE);
+        playAgainButton.setVisibility(View.GONE);
+        menuButton.setVisibility(View.GONE);
+        if (scoreLabel.set(0)) {
+            scoreText.setText(scoreLabel.getChars(), 0, scoreLabel.length());
+        }
+
+        raceStartMillis = SystemClock.uptimeMillis();
+        startTracing();
+        synthesizer.start(); // back at base pitch
+        restartPending = true;
+        gameView.setAnimating(true);
+    }
+
+    private void tick(long frameTimeNanos, long frameNanos) {
+        if (raceLoop.runFrame(frameTimeNanos, frameNanos)) {
+            currentScore = world.getScore();
+            inputLog.finish(world);
+            gameView.setAnimating(false);
+            runOnUiThread(endGameTask);
+            return;
+        }
 
-        float v1 = getPseudoRandom(intX);
-        float v2 = getPseudoRandom(intX + 1);
+        if (world.isTurning() != steering) {
+            steering = !steering;
+            runOnUiThread(updatePitchTask);
+        }
 
-        return cosineInterpolate(v1, v2, fracX);
+        if (world.getScore() != currentScore) {
+            currentScore = world.getScore();
+            // At most ten HUD updates a second rather than one every frame; the game
+            // over screen shows the exact final score.
+            if (!scoreUpdatePending && frameTimeNanos - lastScorePostNanos >= SCORE_REFRESH_NANOS) {
+                scoreUpdatePending = true;
+                lastScorePostNanos = frameTimeNanos;
+                scoreText.post(updateScoreTask);
+            }
+        }
     }
 
-    private void startRoadAnimation() {
-        final int screenHeight = getResources().getDisplayMetrics().heightPixels;
-        final int screenWidth = getResources().getDisplayMetrics().widthPixels;
+    @Override
+    public void onDraw(Canvas canvas) {
+        Tracer.begin(TRACE_DRAW);
+        raceRenderer.draw(canvas, world, stepAccumulator.getAlpha());
+        Tracer.end();
+        if (!firstFrameDrawn) {
+            firstFrameDrawn = true;
+            DisasterDriverApp.onRaceDrawn();
+        }
+    }
 
-        animator = ValueAnimator.ofFloat(0.0f, 1.0f);
-        animator.setRepeatCount(ValueAnimator.INFINITE);
-        animator.setInterpolator(new LinearInterpolator());
-        animator.setDuration(12000L); // Duration controls the update tick rate essentially
+    @Override
+    public void onFramePosted(long postedNanos) {
+        long inputNanos = inputQueue.takeAppliedInputTime();
+        if (inputNanos != 0) {
+            frameMetrics.recordInputLatency(postedNanos - inputNanos);
+        }
+    }
 
-        final View[] repeatingLines = { line1, line2, line3 };
+    private final Runnable updateScoreTask = new Runnable() {
+        @Override
+        public void run() {
+            scoreUpdatePending = false;
+            if (scoreLabel.set(currentScore)) {
+                scoreText.setText(scoreLabel.getChars(), 0, scoreLabel.length());
+            }
+            if (showFrameMetrics) {
+                updateDebugOverlay();
+            }
+        }
+    };
 
-        // Reset time when starting
-        totalTime = 0;
+    private void updateDebugOverlay() {
+        long now = SystemClock.uptimeMillis();
+        if (now - lastOverlayUpdate < OVERLAY_REFRESH_MS)
+            return;
+        lastOverlayUpdate = now;
+        overlayText.setLength(0);
+        frameMetrics.appendSummary(overlayText);
+        debugOverlay.setText(overlayText);
+    }
 
-        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            private float lastRoadOffset = 0f;
-            private long lastUpdate = 0;
+    /**
+     * Writes this race's timing report to files/frame_metrics/ on the race
+     * files thread. Only with the overlay on or in a debuggable build; nobody pulls
+     * them off a release install otherwise.
+     */
+    private void saveFrameMetrics() {
+        if (!showFrameMetrics && !isDebuggable())
+            return;
+        StringBuilder report = new StringBuilder();
+        report.append("device=").append(Build.MANUFACTURER).append(' ').append(Build.MODEL).append('\n');
+        report.append("score=").append(currentScore).append('\n');
+        DisasterDriverApp.appendReport(report);
+        AudioEngine audioEngine = AudioEngine.get(this);
+        AudioOutput audioOutput = audioEngine.getOutput();
+        // Only missing if the audio thread is still building, which a whole race should outlast.
+        if (audioOutput != null) {
+            report.append("audio_sample_rate=").append(audioEngine.getSampleRate()).append('\n');
+            report.append("audio_burst_frames=").append(audioOutput.getBurstFrames()).append('\n');
+            report.append("audio_buffer_frames=").append(audioOutput.getBufferSizeFrames()).append('\n');
+            report.append("audio_underruns=").append(audioOutput.getUnderrunCount()).append('\n');
+        }
+        frameMetrics.appendReport(report);
+        final byte[] bytes = report.toString().getBytes(StandardCharsets.UTF_8);
+        final File dir = new File(getFilesDir(), "frame_metrics");
+        final String name = "race_" + System.currentTimeMillis() + ".txt";
 
+        RACE_FILES.execute(new Runnable() {
             @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (!raceStarted || gameOver) {
-                    lastUpdate = 0;
+            public void run() {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    Log.w(TAG, "Could not create " + dir);
                     return;
                 }
-
-                long currentTime = System.currentTimeMillis();
-                if (lastUpdate == 0) {
-                    lastUpdate = currentTime;
+                try (FileOutputStream out = new FileOutputStream(new File(dir, name))) {
+                    out.write(bytes);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not write frame metrics", e);
                 }
-                float dt = (currentTime - lastUpdate) / 1000f;
-                lastUpdate = currentTime;
-                totalTime += dt;
+                pruneOldest(dir, MAX_SAVED_RACES);
+            }
+        });
+    }
 
-                final float roadMoveSpeed = 15.0f; // This is the vertical speed
-                final float carDriftSpeed = 5.0f;
+    /**
+     * Writes this race's input log to files/replays/ so it can be replayed on a
+     * desktop JVM. Only the newest few are kept.
+     */
+    private void saveInputLog() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            inputLog.writeTo(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not encode input log", e);
+            return;
+        }
+        final File dir = new File(getFilesDir(), "replays");
+        final String name = "race_" + System.currentTimeMillis() + ".ddr";
 
-                // Engine Sound Logic
-                if (isTurningLeft || isTurningRight) {
-                    synthesizer.setFrequency(180.0); // Lower pitch on turn
-                } else {
-                    synthesizer.setFrequency(220.0); // Base pitch
+        RACE_FILES.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    Log.w(TAG, "Could not create " + dir);
+                    return;
                 }
-
-                // Base Noise: Large, slow turns
-                float noise1 = getNoise(totalTime * 0.2f);
-                // Detail Noise: Faster, smaller wiggles
-                float noise2 = getNoise(totalTime * 6.0f);
-
-                float mainTurnFactor = noise1;
-                float wiggleFactor = noise2;
-
-                // Combine them.
-                // noise outputs -1 to 1 approximately (based on the hash func).
-                // mainTurnFactor drives the big curves (screen width / 3.5)
-                // wiggleFactor drives the jitter (screen width / 25)
-                float roadTurnOffset = (mainTurnFactor * (screenWidth / 3.5f)) + (wiggleFactor * (screenWidth / 25f));
-
-                float roadDeltaX = roadTurnOffset - lastRoadOffset;
-                lastRoadOffset = roadTurnOffset;
-
-                // Road Schrinking Logic
-                float scaleSpeed = 0.00005f;
-                float additionalScale = 0.0001f * (currentScore / 1000f);
-                float currentScaleX = road.getScaleX();
-                if (currentScaleX > 0.3f) {
-                    road.setScaleX(currentScaleX - scaleSpeed); // removed additionalScale for stability if needed, can
-                                                                // add back
+                try (FileOutputStream out = new FileOutputStream(new File(dir, name))) {
+                    bytes.writeTo(out);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not write input log", e);
                 }
+                pruneOldest(dir, MAX_SAVED_RACES);
+            }
+        });
+    }
 
-                float shrinkOffset = (road.getWidth() * (1 - road.getScaleX())) / 2;
-
-                road.setTranslationX(roadTurnOffset);
-                bumperLeft.setTranslationX(roadTurnOffset + shrinkOffset);
-                bumperRight.setTranslationX(roadTurnOffset - shrinkOffset);
-                startLine.setTranslationX(roadTurnOffset);
-                for (View item : repeatingLines)
-                    item.setTranslationX(roadTurnOffset);
+    private boolean isDebuggable() {
+        return (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
 
-                if (isTurningLeft) {
-                    playerCar.setRotation(playerCar.getRotation() - 2);
-                }
-                if (isTurningRight) {
-                    playerCar.setRotation(playerCar.getRotation() + 2);
-                }
+    /**
+     * Deletes all but the newest keep race_<millis> files in dir. Names sort by
+     * time, so this doesn't depend on modification times surviving a backup
+     * restore. Race files thread only.
+     */
+    private static void pruneOldest(File dir, int keep) {
+        String[] names = dir.list();
+        if (names == null || names.length <= keep)
+            return;
+        Arrays.sort(names);
+        for (int i = 0; i < names.length - keep; i++) {
+            if (names[i].startsWith("race_") && !new File(dir, names[i]).delete()) {
+                Log.w(TAG, "Could not delete " + names[i]);
+            }
+        }
+    }
 
-                float newCarX = playerCar.getTranslationX();
-                double angleInRadians = Math.toRadians(playerCar.getRotation());
-                float carDrift = (float) (Math.sin(angleInRadians) * carDriftSpeed);
-                newCarX += carDrift;
+    /**
+     * Records a trace of the race about to start if the overlay is on, the build
+     * is debuggable, or this race is one of the sampled ones.
+     */
+    private void startTracing() {
+        Tracer.setEnabled(showFrameMetrics || isDebuggable() || Math.random() < TRACE_SAMPLE_RATE);
+        traceStartNanos = System.nanoTime();
+    }
 
-                if (checkCollision(newCarX, shrinkOffset)) {
-                    endGame();
+    /**
+     * Writes what the tracer recorded this race to files/traces/ as Chrome trace
+     * JSON, for chrome://tracing or ui.perfetto.dev. A trace runs to a few MB, so
+     * fewer are kept than of the other race files.
+     */
+    private void saveTrace() {
+        final long since = traceStartNanos;
+        final File dir = new File(getFilesDir(), "traces");
+        final String name = "race_" + System.currentTimeMillis() + ".json";
+
+        RACE_FILES.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    Log.w(TAG, "Could not create " + dir);
                     return;
                 }
-
-                playerCar.setTranslationX(newCarX);
-
-                float rotation = playerCar.getRotation() % 360;
-                if (rotation < 0)
-                    rotation += 360;
-                boolean isUpsideDown = rotation > 90 && rotation < 270;
-                float verticalMove = isUpsideDown ? -roadMoveSpeed : roadMoveSpeed;
-
-                float lineMargin = getResources().getDisplayMetrics().density * 80;
-                float totalPatternHeight = repeatingLines.length * (line1.getHeight() + lineMargin);
-
-                for (View line : repeatingLines) {
-                    line.setTranslationY(line.getTranslationY() + verticalMove);
-                    if (verticalMove > 0 && line.getTop() + line.getTranslationY() > screenHeight) {
-                        line.setTranslationY(line.getTranslationY() - totalPatternHeight);
-                    } else if (verticalMove < 0 && line.getBottom() + line.getTranslationY() < 0) {
-                        line.setTranslationY(line.getTranslationY() + totalPatternHeight);
-                    }
+                try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, name)),
+                        StandardCharsets.UTF_8)) {
+                    Tracer.writeChromeJson(out, since);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not write trace", e);
                 }
-                startLine.setTranslationY(startLine.getTranslationY() + verticalMove);
-
-                currentScore = System.currentTimeMillis() - raceStartTime;
-                scoreText.setText("Score: " + currentScore);
+                pruneOldest(dir, MAX_SAVED_TRACES);
             }
         });
-        animator.start();
     }
 
-    private boolean checkCollision(float newCarX, float shrinkOffset) {
-        float carHalfWidth = (playerCar.getWidth() * playerCar.getScaleX()) / 2;
-        float carCenterInParent = getResources().getDisplayMetrics().widthPixels / 2f;
-        float newCarVisualCenter = carCenterInParent + newCarX;
-        float newCarLeft = newCarVisualCenter - carHalfWidth;
-        float newCarRight = newCarVisualCenter + carHalfWidth;
-        float carTop = playerCar.getY();
-        float carBottom = carTop + playerCar.getHeight();
-
-        float roadLeftEdge = road.getX() + shrinkOffset;
-        float roadRightEdge = road.getX() + road.getWidth() - shrinkOffset;
-
-        if (newCarLeft <= roadLeftEdge || newCarRight >= roadRightEdge) {
-            return true;
+    private final Runnable endGameTask = new Runnable() {
+        @Override
+        public void run() {
+            endGame();
         }
-
-        return false;
-    }
+    };
 
     private void endGame() {
         if (gameOver)
             return;
         gameOver = true;
-        animator.cancel();
-
-        SharedPreferences prefs = getSharedPreferences("GamePrefs", MODE_PRIVATE);
-        long highScore = prefs.getLong("HIGH_SCORE", 0);
-        if (currentScore > highScore) {
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putLong("HIGH_SCORE", currentScore);
-            editor.apply();
-            highScore = currentScore;
+        Tracer.begin(TRACE_END_GAME);
+        leftTouch.reset();
+        rightTouch.reset();
+        saveFrameMetrics();
+        saveInputLog();
+        if (showFrameMetrics) {
+            lastOverlayUpdate = 0;
+            updateDebugOverlay();
         }
 
+        // Only touches memory; the history writes itself to disk in the background.
+        RunHistory history = Leaderboard.get(this);
+        history.append(new RunRecord(System.currentTimeMillis(), currentScore,
+                (int) (SystemClock.uptimeMillis() - raceStartMillis), carColor, isDecalEnabled, decalColor));
+        long highScore = history.getBestScore();
+
         countdownText.setText("Game Over\nScore: " + currentScore + "\nHigh Score: " + highScore);
         countdownText.setTextSize(30f);
         countdownText.setVisibility(View.VISIBLE);
@@ -371,5 +631,9 @@ public class MainActivity extends AppCompatActivity {
         if (synthesizer != null) {
             synthesizer.playSadMelody();
         }
+        Tracer.end();
+        if (Tracer.isEnabled()) {
+            saveTrace();
+        }
     }
 }
@@ -2,9 +2,11 @@ package io.github.crocodilehughes.disasterdriver;
 
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.ImageView;
@@ -16,6 +18,8 @@ public class MenuActivity extends AppCompatActivity {
 
     private ImageView carPreview;
     private ImageView carPreviewDecal;
+    private ImageView carPreviewDetails;
+    private CarSpriteCache spriteCache;
     private int[] colors = { Color.RED, Color.BLUE, Color.GREEN, Color.YELLOW, Color.CYAN, Color.MAGENTA, Color.WHITE };
     private int[] decalColors = { Color.WHITE, Color.BLACK, Color.YELLOW, Color.RED };
     private int currentColorIndex = 0;
@@ -31,25 +35,44 @@ public class MenuActivity extends AppCompatActivity {
         TextView highScoreText = findViewById(R.id.high_score_text);
         carPreview = findViewById(R.id.car_preview_body);
         carPreviewDecal = findViewById(R.id.car_preview_decal);
+        carPreviewDetails = findViewById(R.id.car_preview_details);
+        spriteCache = CarSpriteCache.get(this);
         Button changeColorButton = findViewById(R.id.change_color_button);
         Button toggleDecalButton = findViewById(R.id.toggle_decal_button);
         Button changeDecalColorButton = findViewById(R.id.change_decal_color_button);
+        Button toggleTiltButton = findViewById(R.id.toggle_tilt_button);
         Button startButton = findViewById(R.id.start_button);
 
-        // Load High Score
-        SharedPreferences prefs = getSharedPreferences("GamePrefs", MODE_PRIVATE);
-        long highScore = prefs.getLong("HIGH_SCORE", 0);
-        highScoreText.setText("High Score: " + highScore);
+        // Starts reading the run history in the background; onResume shows it once it's in.
+        Leaderboard.get(this);
+        highScoreText.setText("High Score: ");
+
+        // Cold start ends when the first frame of the menu is drawn.
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                final ViewTreeObserver.OnDrawListener listener = this;
+                // Listeners can't be removed while they're being dispatched.
+                content.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        content.getViewTreeObserver().removeOnDrawListener(listener);
+                        DisasterDriverApp.onMenuDrawn();
+                        reportFullyDrawn();
+                    }
+                });
+            }
+        });
 
         // Initial Color
-        updateCarColor();
-        updateDecalColor();
+        updatePreview();
 
         changeColorButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 currentColorIndex = (currentColorIndex + 1) % colors.length;
-                updateCarColor();
+                updatePreview();
             }
         });
 
@@ -57,7 +80,7 @@ public class MenuActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 currentDecalColorIndex = (currentDecalColorIndex + 1) % decalColors.length;
-                updateDecalColor();
+                updatePreview();
             }
         });
 
@@ -65,13 +88,26 @@ public class MenuActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 isDecalEnabled = !isDecalEnabled;
-                carPreviewDecal.setVisibility(isDecalEnabled ? View.VISIBLE : View.GONE);
+                updatePreview();
+            }
+        });
+
+        // Tilt steering is remembered between sessions, like mute.
+        final SharedPreferences prefs = getSharedPreferences("GamePrefs", MODE_PRIVATE);
+        updateTiltButton(toggleTiltButton, prefs.getBoolean("TILT_STEERING", false));
+        toggleTiltButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                boolean tilt = !prefs.getBoolean("TILT_STEERING", false);
+                prefs.edit().putBoolean("TILT_STEERING", tilt).apply();
+                updateTiltButton(toggleTiltButton, tilt);
             }
         });
 
         startButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                DisasterDriverApp.onRaceRequested();
                 Intent intent = new Intent(MenuActivity.this, MainActivity.class);
                 intent.putExtra("CAR_COLOR", colors[currentColorIndex]);
                 intent.putExtra("IS_DECAL_ENABLED", isDecalEnabled);
@@ -81,25 +117,57 @@ public class MenuActivity extends AppCompatActivity {
         });
     }
 
-    private void updateCarColor() {
-        carPreview.setColorFilter(colors[currentColorIndex]);
+    private void updateTiltButton(Button button, boolean tilt) {
+        button.setText(tilt ? R.string.tilt_steering_on : R.string.tilt_steering_off);
     }
 
-    private void updateDecalColor() {
-        carPreviewDecal.setColorFilter(decalColors[currentDecalColorIndex]);
+    /**
+     * Shows the picked combination, and has its sprite built in the background
+     * so the race can start with it ready. Until then the tinted layers stand in.
+     */
+    private void updatePreview() {
+        int carColor = colors[currentColorIndex];
+        int decalColor = decalColors[currentDecalColorIndex];
+        Bitmap sprite = spriteCache.getIfReady(carColor, isDecalEnabled, decalColor);
+        if (sprite != null) {
+            showSprite(sprite);
+            return;
+        }
+        carPreview.setImageResource(R.drawable.ic_racer_body);
+        carPreview.setColorFilter(carColor);
+        carPreviewDecal.setColorFilter(decalColor);
+        carPreviewDecal.setVisibility(isDecalEnabled ? View.VISIBLE : View.GONE);
+        carPreviewDetails.setVisibility(View.VISIBLE);
+        spriteCache.prepare(carColor, isDecalEnabled, decalColor, getMainExecutor(), spriteListener);
+    }
+
+    private void showSprite(Bitmap sprite) {
+        carPreview.clearColorFilter();
+        carPreview.setImageBitmap(sprite);
+        carPreviewDecal.setVisibility(View.GONE);
+        carPreviewDetails.setVisibility(View.GONE);
     }
 
+    private final CarSpriteCache.Listener spriteListener = new CarSpriteCache.Listener() {
+        @Override
+        public void onSpriteReady(long key, Bitmap sprite) {
+            // The player may have moved on to another combination while this one built.
+            if (key == CarSpriteCache.key(colors[currentColorIndex], isDecalEnabled,
+                    decalColors[currentDecalColorIndex])) {
+                showSprite(sprite);
+            }
+        }
+    };
+
     @Override
     protected void onResume() {
         super.onResume();
-        // Reload High Score in case we just came back from a game
+        // Refresh the high score in case we just came back from a game
+        Leaderboard.get(this).whenLoaded(getMainExecutor(), highScoreListener);
         SharedPreferences prefs = getSharedPreferences("GamePrefs", MODE_PRIVATE);
-        long highScore = prefs.getLong("HIGH_SCORE", 0);
-        TextView highScoreText = findViewById(R.id.high_score_text);
-        highScoreText.setText("High Score: " + highScore);
 
         if (synthesizer == null) {
-            synthesizer = new EngineSoundSynthesizer();
+            synthesizer = new EngineSoundSynthesizer(this);
         }
 
         boolean isMuted = prefs.getBoolean("IS_MUTED", false);
@@ -126,6 +194,14 @@ public class MenuActivity extends AppCompatActivity {
         synthesizer.playHealingTheme();
     }
 
+    private final RunHistory.Listener highScoreListener = new RunHistory.Listener() {
+        @Override
+        public void onLoaded(RunHistory history) {
+            TextView highScoreText = findViewById(R.id.high_score_text);
+            highScoreText.setText("High Score: " + history.getBestScore());
+        }
+    };
+
     private void updateMuteButton(ImageButton button, boolean isMuted) {
         button.setImageResource(isMuted ? R.drawable.ic_mute_on : R.drawable.ic_mute_off);
     }
@@ -0,0 +1,351 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.Drawable;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * Draws the race scene (background, road, bumpers, roadside markers, start
+ * line, lane lines, cones and the player's car) straight onto a Canvas from
+ * {@link GameWorld} state. Geometry follows what activity_main used to lay out
+ * with views. Lane dashes and roadside markers are {@link ScrollingLayer}s
+ * scrolled by how far the ground has moved. The road follows the course down
+ * the screen, so the bends ahead show before the car gets to them, and
+ * everything on it is placed at its own row's center.
+ */
+public class RaceRenderer {
+
+    private static final float ROAD_MARGIN_DP = 80;
+    private static final float BUMPER_WIDTH_DP = 10;
+    // The road's edges are sampled this often down the screen and joined with straight lines.
+    private static final float ROAD_ROW_DP = 16;
+    private static final float START_LINE_HEIGHT_DP = 10;
+    // The start line's bottom sits this far below the top of the car's (unscaled) box.
+    private static final float START_LINE_OVERLAP_DP = 80;
+    private static final float LINE_WIDTH_DP = 10;
+    private static final float LINE_HEIGHT_DP = 80;
+    private static final float LINE_MARGIN_DP = 80;
+    // Reflector posts just off the road, unevenly spaced so the edge doesn't look tiled.
+    private static final int MARKER_COUNT = 200;
+    private static final float MARKER_WIDTH_DP = 6;
+    private static final float MARKER_HEIGHT_DP = 16;
+    private static final float MARKER_GAP_DP = 12; // between the bumper and the post
+    private static final float MARKER_MIN_SPACING_DP = 120;
+    private static final float MARKER_MAX_SPACING_DP = 400;
+    private static final long MARKER_SEED = 0x5EED;
+    private static final int MARKER_LEFT = 0;
+    private static final int MARKER_RIGHT = 1;
+    private static final float CAR_SIZE_DP = 24;
+    private static final float CAR_SCALE = 8.0f;
+    private static final float CAR_LIFT_PX = 100.0f;
+    // The body in ic_racer_body's 24x24 viewport spans x 1..23 and y 10..17.
+    private static final float CAR_VIEWPORT = 24;
+    private static final float CAR_BODY_HALF_WIDTH = 11;
+    private static final float CAR_BODY_HALF_HEIGHT = 3.5f;
+    private static final float CAR_BODY_OFFSET_Y = 1.5f;
+    // ic_cone spans x 4..20 and y 2..20 of its 24x24 viewport.
+    private static final float CONE_SIZE_DP = 64;
+    private static final float CONE_VIEWPORT = 24;
+    private static final float CONE_BODY_HALF_WIDTH = 8;
+    private static final float CONE_BODY_HALF_HEIGHT = 9;
+    private static final float CONE_BODY_OFFSET_Y = -1;
+
+    private final float density;
+    private final Drawable background;
+    // The car's layers flattened at their on-screen size; see CarSpriteCache. Set by the
+    // sprite builder if it wasn't ready yet, and until then the layers are drawn one by one.
+    private volatile Bitmap carSprite;
+    private Drawable[] carLayers;
+    private final Drawable cone;
+
+    private final Paint roadPaint = new Paint();
+    private final Paint bumperPaint = new Paint();
+    private final Paint linePaint = new Paint();
+    private final Paint markerPaint = new Paint();
+    // Filtered, so the sprite stays smooth as the car rotates.
+    private final Paint carPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final ScrollingLayer laneDashes = new ScrollingLayer(1, 16);
+    private final ScrollingLayer roadsideMarkers = new ScrollingLayer(MARKER_COUNT, 64);
+    // Rebuilt every frame; rewinding keeps their storage.
+    private final Path roadPath = new Path();
+    private final Path leftBumperPath = new Path();
+    private final Path rightBumperPath = new Path();
+    // The road's edges at each sampled row, top to bottom.
+    private float[] rowLefts = new float[0];
+    private float[] rowRights = new float[0];
+    private float rowStep;
+
+    private int width;
+    private int height;
+
+    public RaceRenderer(Context context, int carColor, boolean isDecalEnabled, int decalColor) {
+        density = context.getResources().getDisplayMetrics().density;
+        background = context.getDrawable(R.drawable.background_road);
+        // Normally built while the player was still in the menu.
+        CarSpriteCache sprites = CarSpriteCache.get(context);
+        carSprite = sprites.getIfReady(carColor, isDecalEnabled, decalColor);
+        if (carSprite == null) {
+            carLayers = buildCarLayers(context, carColor, isDecalEnabled, decalColor);
+            sprites.prepare(carColor, isDecalEnabled, decalColor, DIRECT, new CarSpriteCache.Listener() {
+                @Override
+                public void onSpriteReady(long key, Bitmap sprite) {
+                    carSprite = sprite;
+                }
+            });
+        }
+        cone = context.getDrawable(R.drawable.ic_cone);
+
+        roadPaint.setColor(0xFF424242);
+        bumperPaint.setColor(0xFFF44336);
+        linePaint.setColor(0xFFFFFFFF);
+        markerPaint.setColor(0xFFFFEB3B);
+
+        // One dash per period, starting a gap below the top of the screen.
+        laneDashes.setPeriod(dp(LINE_HEIGHT_DP) + dp(LINE_MARGIN_DP));
+        laneDashes.add(0, dp(LINE_MARGIN_DP), dp(LINE_WIDTH_DP), dp(LINE_HEIGHT_DP), 0);
+        buildRoadsideMarkers();
+
+        // Bounds are placed so (0, 0) is the middle of the cone's body, which is where obstacles sit.
+        int coneSize = Math.round(dp(CONE_SIZE_DP));
+        int coneShift = Math.round(-CONE_BODY_OFFSET_Y * coneUnit());
+        cone.setBounds(-coneSize / 2, -coneSize / 2 + coneShift,
+                coneSize - coneSize / 2, coneSize - coneSize / 2 + coneShift);
+    }
+
+    // Both sides get their own spacing; the whole stretch repeats, but far too rarely to notice.
+    private void buildRoadsideMarkers() {
+        Random random = new Random(MARKER_SEED);
+        int perSide = MARKER_COUNT / 2;
+        float[] left = new float[perSide];
+        float[] right = new float[perSide];
+        float leftY = 0;
+        float rightY = dp(MARKER_MIN_SPACING_DP) / 2;
+        for (int i = 0; i < perSide; i++) {
+            left[i] = leftY;
+            right[i] = rightY;
+            leftY += dp(MARKER_MIN_SPACING_DP + random.nextFloat() * (MARKER_MAX_SPACING_DP - MARKER_MIN_SPACING_DP));
+            rightY += dp(MARKER_MIN_SPACING_DP + random.nextFloat() * (MARKER_MAX_SPACING_DP - MARKER_MIN_SPACING_DP));
+        }
+        roadsideMarkers.setPeriod(Math.max(leftY, rightY));
+        for (int i = 0; i < perSide; i++) {
+            roadsideMarkers.add(0, left[i], dp(MARKER_WIDTH_DP), dp(MARKER_HEIGHT_DP), MARKER_LEFT);
+            roadsideMarkers.add(0, right[i], dp(MARKER_WIDTH_DP), dp(MARKER_HEIGHT_DP), MARKER_RIGHT);
+        }
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // The race's old way of drawing the car, for the frames before the sprite arrives.
+    private Drawable[] buildCarLayers(Context context, int carColor, boolean isDecalEnabled, int decalColor) {
+        Drawable body = context.getDrawable(R.drawable.ic_racer_body).mutate();
+        body.setColorFilter(new PorterDuffColorFilter(carColor, PorterDuff.Mode.SRC_ATOP));
+        Drawable details = context.getDrawable(R.drawable.ic_racer_details);
+        Drawable[] layers;
+        if (isDecalEnabled) {
+            Drawable decal = context.getDrawable(R.drawable.ic_racer_decal).mutate();
+            decal.setColorFilter(new PorterDuffColorFilter(decalColor, PorterDuff.Mode.SRC_ATOP));
+            layers = new Drawable[] { body, decal, details };
+        } else {
+            layers = new Drawable[] { body, details };
+        }
+        int carSize = getCarSpriteSize(density);
+        for (Drawable layer : layers) {
+            layer.setBounds(-carSize / 2, -carSize / 2, carSize - carSize / 2, carSize - carSize / 2);
+        }
+        return layers;
+    }
+
+    /** Side of the square car sprite in pixels: rasterized at its on-screen size, never scaled up. */
+    static int getCarSpriteSize(float density) {
+        return Math.round(CAR_SIZE_DP * density * CAR_SCALE);
+    }
+
+    private float dp(float value) {
+        return value * density;
+    }
+
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        background.setBounds(0, 0, width, height);
+        int rows = (int) Math.ceil(height / dp(ROAD_ROW_DP)) + 1;
+        rowStep = rows > 1 ? height / (float) (rows - 1) : 0;
+        rowLefts = new float[rows];
+        rowRights = new float[rows];
+    }
+
+    public float getRoadLeft() {
+        return dp(ROAD_MARGIN_DP);
+    }
+
+    public float getRoadWidth() {
+        return width - 2 * dp(ROAD_MARGIN_DP);
+    }
+
+    /** Screen y of the car sprite's center, which it rotates around. */
+    public float getCarCenterY() {
+        return height - dp(CAR_SIZE_DP) / 2 - CAR_LIFT_PX;
+    }
+
+    private float carUnit() {
+        return dp(CAR_SIZE_DP) * CAR_SCALE / CAR_VIEWPORT;
+    }
+
+    public float getCarBodyHalfWidth() {
+        return CAR_BODY_HALF_WIDTH * carUnit();
+    }
+
+    public float getCarBodyHalfHeight() {
+        return CAR_BODY_HALF_HEIGHT * carUnit();
+    }
+
+    public float getCarBodyOffsetY() {
+        return CAR_BODY_OFFSET_Y * carUnit();
+    }
+
+    private float coneUnit() {
+        return dp(CONE_SIZE_DP) / CONE_VIEWPORT;
+    }
+
+    public float getConeHalfWidth() {
+        return CONE_BODY_HALF_WIDTH * coneUnit();
+    }
+
+    public float getConeHalfHeight() {
+        return CONE_BODY_HALF_HEIGHT * coneUnit();
+    }
+
+    public void draw(Canvas canvas, GameWorld world, float alpha) {
+        background.draw(canvas);
+
+        drawRoad(canvas, world, alpha);
+
+        float scroll = world.getStartLineOffset(alpha);
+        roadsideMarkers.update(scroll, height);
+        for (int i = 0; i < roadsideMarkers.getVisibleCount(); i++) {
+            float markerWidth = roadsideMarkers.getVisibleWidth(i);
+            float markerHeight = roadsideMarkers.getVisibleHeight(i);
+            float top = roadsideMarkers.getVisibleTop(i);
+            float center = world.getRoadCenterX(top + markerHeight / 2, alpha);
+            float edge = world.getRoadHalfWidth(top + markerHeight / 2, alpha) + dp(MARKER_GAP_DP);
+            float left = roadsideMarkers.getVisibleKind(i) == MARKER_LEFT
+                    ? center - edge - markerWidth
+                    : center + edge;
+            canvas.drawRect(left, top, left + markerWidth, top + markerHeight, markerPaint);
+        }
+
+        float carBoxTop = height - dp(CAR_SIZE_DP);
+        float startLineBottom = carBoxTop + dp(START_LINE_OVERLAP_DP) + scroll;
+        float startLineLeft = world.getRoadCenterX(startLineBottom, alpha) - width / 2f;
+        canvas.drawRect(startLineLeft, startLineBottom - dp(START_LINE_HEIGHT_DP),
+                startLineLeft + width, startLineBottom, linePaint);
+
+        laneDashes.update(scroll, height);
+        for (int i = 0; i < laneDashes.getVisibleCount(); i++) {
+            float top = laneDashes.getVisibleTop(i);
+            float dashHeight = laneDashes.getVisibleHeight(i);
+            float left = world.getRoadCenterX(top + dashHeight / 2, alpha) - dp(LINE_WIDTH_DP) / 2
+                    + laneDashes.getVisibleLeft(i);
+            canvas.drawRect(left, top, left + laneDashes.getVisibleWidth(i), top + dashHeight, linePaint);
+        }
+
+        drawObstacles(canvas, world, alpha, scroll);
+
+        int save = canvas.save();
+        canvas.translate(width / 2f + world.getCarX(alpha), getCarCenterY());
+        canvas.rotate(world.getCarRotation(alpha));
+        Bitmap sprite = carSprite;
+        if (sprite != null) {
+            int carSize = sprite.getWidth();
+            canvas.drawBitmap(sprite, -carSize / 2, -carSize / 2, carPaint);
+        } else {
+            for (Drawable layer : carLayers) {
+                layer.draw(canvas);
+            }
+        }
+        canvas.restoreToCount(save);
+    }
+
+    /** The road and its bumpers, as polygons through the course's edges at each sampled row. */
+    private void drawRoad(Canvas canvas, GameWorld world, float alpha) {
+        int rows = rowLefts.length;
+        for (int row = 0; row < rows; row++) {
+            float y = row * rowStep;
+            float center = world.getRoadCenterX(y, alpha);
+            float halfWidth = world.getRoadHalfWidth(y, alpha);
+            rowLefts[row] = center - halfWidth;
+            rowRights[row] = center + halfWidth;
+        }
+        float bumper = dp(BUMPER_WIDTH_DP);
+        roadPath.rewind();
+        leftBumperPath.rewind();
+        rightBumperPath.rewind();
+        // Down the left edge, then back up the right (or up the bumper's inner edge).
+        for (int row = 0; row < rows; row++) {
+            float y = row * rowStep;
+            if (row == 0) {
+                roadPath.moveTo(rowLefts[row], y);
+                leftBumperPath.moveTo(rowLefts[row], y);
+                rightBumperPath.moveTo(rowRights[row] - bumper, y);
+            } else {
+                roadPath.lineTo(rowLefts[row], y);
+                leftBumperPath.lineTo(rowLefts[row], y);
+                rightBumperPath.lineTo(rowRights[row] - bumper, y);
+            }
+        }
+        for (int row = rows - 1; row >= 0; row--) {
+            float y = row * rowStep;
+            roadPath.lineTo(rowRights[row], y);
+            leftBumperPath.lineTo(rowLefts[row] + bumper, y);
+            rightBumperPath.lineTo(rowRights[row], y);
+        }
+        roadPath.close();
+        leftBumperPath.close();
+        rightBumperPath.close();
+        canvas.drawPath(roadPath, roadPaint);
+        canvas.drawPath(leftBumperPath, bumperPaint);
+        canvas.drawPath(rightBumperPath, bumperPaint);
+    }
+
+    private void drawObstacles(Canvas canvas, GameWorld world, float alpha, float scroll) {
+        ObstaclePool obstacles = world.getObstacles();
+        float coneSpacing = 2 * getConeHalfWidth();
+        float reach = dp(CONE_SIZE_DP);
+        for (int id = 0; id < obstacles.getCapacity(); id++) {
+            if (!obstacles.isActive(id))
+                continue;
+            float y = obstacles.getY(id) + scroll;
+            if (y < -reach || y > height + reach)
+                continue;
+            float x = world.getRoadCenterX(y, alpha) + obstacles.getX(id);
+            if (obstacles.getType(id) == ObstaclePool.TYPE_CONE_ROW) {
+                float first = x - (ObstaclePool.CONES_PER_ROW - 1) * coneSpacing / 2;
+                for (int i = 0; i < ObstaclePool.CONES_PER_ROW; i++) {
+                    drawCone(canvas, first + i * coneSpacing, y);
+                }
+            } else {
+                drawCone(canvas, x, y);
+            }
+        }
+    }
+
+    private void drawCone(Canvas canvas, float x, float y) {
+        int save = canvas.save();
+        canvas.translate(x, y);
+        cone.draw(canvas);
+        canvas.restoreToCount(save);
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Turns the touches on one steering button into timestamped presses and
+ * releases on an {@link InputQueue}. The button is down while any pointer is
+ * on it: a second finger landing or one of two lifting doesn't let go, a
+ * finger sliding off does, and ACTION_CANCEL lets go of everything. Moves are
+ * walked through their batched history so a slide off the button is stamped
+ * with when it happened, not when the batch was delivered.
+ *
+ * MotionEvent times are uptimeMillis(), which on Android is the same clock as
+ * System.nanoTime() in coarser units. Main thread only.
+ */
+abstract class SteeringTouchListener implements View.OnTouchListener {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final InputQueue queue;
+    private final int button;
+    // Bit per pointer id currently on the button. Ids are small and reused.
+    private long pointersOn;
+
+    SteeringTouchListener(InputQueue queue, int button) {
+        this.queue = queue;
+        this.button = button;
+    }
+
+    /** Whether touches should steer right now; releases are always delivered. */
+    abstract boolean isSteering();
+
+    /** Forgets every pointer without queueing a release, e.g. once the race is over. */
+    void reset() {
+        pointersOn = 0;
+    }
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!isSteering())
+                    return false;
+                set(event.getPointerId(event.getActionIndex()), true, event.getEventTime());
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                set(event.getPointerId(event.getActionIndex()), false, event.getEventTime());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                int pointers = event.getPointerCount();
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    long time = event.getHistoricalEventTime(h);
+                    for (int p = 0; p < pointers; p++) {
+                        set(event.getPointerId(p), isOver(v, event.getHistoricalX(p, h),
+                                event.getHistoricalY(p, h)), time);
+                    }
+                }
+                for (int p = 0; p < pointers; p++) {
+                    set(event.getPointerId(p), isOver(v, event.getX(p), event.getY(p)), event.getEventTime());
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                if (pointersOn != 0) {
+                    pointersOn = 0;
+                    changed(false, event.getEventTime());
+                }
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isOver(View v, float x, float y) {
+        return x >= 0 && y >= 0 && x < v.getWidth() && y < v.getHeight();
+    }
+
+    private void set(int pointerId, boolean on, long eventMillis) {
+        if (pointerId >= Long.SIZE)
+            return;
+        boolean wasDown = pointersOn != 0;
+        long bit = 1L << pointerId;
+        // Sliding back onto the button only counts while the race is on.
+        if (on && (pointersOn & bit) == 0 && !isSteering())
+            return;
+        pointersOn = on ? pointersOn | bit : pointersOn & ~bit;
+        boolean down = pointersOn != 0;
+        if (down != wasDown) {
+            changed(down, eventMillis);
+        }
+    }
+
+    private void changed(boolean down, long eventMillis) {
+        queue.offer(eventMillis * NANOS_PER_MILLI, button, down);
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Surface;
+
+/**
+ * Feeds the gyroscope and accelerometer into a {@link TiltFilter} on a thread
+ * of its own, so sensor callbacks never queue up behind the main thread's
+ * layout and touch work. The race tick reads the result from the filter.
+ *
+ * Started and stopped from the main thread, with the activity's resume and pause.
+ */
+final class TiltSensor implements SensorEventListener {
+
+    private final SensorManager sensorManager;
+    private final Sensor accelerometer;
+    private final Sensor gyroscope;
+    private final TiltFilter filter = new TiltFilter();
+    private HandlerThread thread;
+    // Read on the sensor thread; set before the listener is registered.
+    private volatile int displayRotation;
+
+    TiltSensor(Context context) {
+        sensorManager = context.getSystemService(SensorManager.class);
+        accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+    }
+
+    /** Without an accelerometer there's nothing to steer with; the gyroscope is optional. */
+    boolean isAvailable() {
+        return accelerometer != null;
+    }
+
+    TiltFilter getFilter() {
+        return filter;
+    }
+
+    /** @param rotation the display's rotation, one of the Surface.ROTATION_ constants */
+    void start(int rotation) {
+        if (thread != null || !isAvailable())
+            return;
+        displayRotation = rotation;
+        thread = new HandlerThread("TiltSensor", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        final Handler handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                filter.reset();
+            }
+        });
+        sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_GAME, handler);
+        if (gyroscope != null) {
+            sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME, handler);
+        }
+    }
+
+    void stop() {
+        if (thread == null)
+            return;
+        sensorManager.unregisterListener(this);
+        thread.quitSafely();
+        thread = null;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] v = event.values;
+        if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+            // Turning about the axis out of the screen doesn't care which way up it is.
+            filter.onGyroscope(event.timestamp, v[2]);
+            return;
+        }
+        // Sensor axes are fixed to the device; turn them to match the screen.
+        switch (displayRotation) {
+            case Surface.ROTATION_90:
+                filter.onAccelerometer(event.timestamp, -v[1], v[0]);
+                break;
+            case Surface.ROTATION_180:
+                filter.onAccelerometer(event.timestamp, -v[0], -v[1]);
+                break;
+            case Surface.ROTATION_270:
+                filter.onAccelerometer(event.timestamp, v[1], -v[0]);
+                break;
+            default:
+                filter.onAccelerometer(event.timestamp, v[0], v[1]);
+                break;
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
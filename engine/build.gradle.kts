@@ -0,0 +1,32 @@
+// Simulation and audio DSP with no Android dependencies, so it can be tested
+// and benchmarked on a plain JVM. The app depends on it directly.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :engine:jmh
+// Results land in build/results/jmh/results.csv, one row per benchmark and
+// parameter set in a fixed order, so two runs can be diffed directly.
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    benchmarkMode.set(listOf("avgt"))
+    timeUnit.set("ns")
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    resultFormat.set("CSV")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.csv"))
+    humanOutputFile.set(layout.buildDirectory.file("results/jmh/human.txt"))
+}
@@ -0,0 +1,83 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Time to render one 1024-frame block at 44.1 kHz (about 23 ms of sound).
+ * The engine drone is rendered the old way (three Math.sin calls per sample)
+ * as a baseline, then through the wavetable oscillator and the full mixer.
+ */
+@State(Scope.Thread)
+public class AudioBlockBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int BLOCK = 1024;
+
+    private final short[] buffer = new short[BLOCK];
+    private double angle;
+    private WavetableOscillator oscillator;
+    private AudioMixer engineOnly;
+    private AudioMixer engineAndTheme;
+
+    @Setup
+    public void setUp() {
+        oscillator = new WavetableOscillator(new Wavetable(Wavetable.ENGINE, SAMPLE_RATE));
+        oscillator.setFrequency(AudioMixer.BASE_ENGINE_FREQUENCY);
+
+        engineOnly = new AudioMixer(SAMPLE_RATE, new NoteCache(SAMPLE_RATE, 512 * 1024));
+        engineOnly.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+
+        engineAndTheme = new AudioMixer(SAMPLE_RATE, new NoteCache(SAMPLE_RATE, 512 * 1024));
+        engineAndTheme.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+        engineAndTheme.onCommand(AudioMixer.CMD_START_THEME, 0);
+    }
+
+    @Benchmark
+    public short[] mathSin() {
+        double increment = 2.0 * Math.PI * AudioMixer.BASE_ENGINE_FREQUENCY / SAMPLE_RATE;
+        for (int i = 0; i < BLOCK; i++) {
+            double sampleValue = 0;
+            sampleValue += Math.sin(angle);
+            sampleValue += 0.5 * Math.sin(angle * 2);
+            sampleValue += 0.25 * Math.sin(angle * 3);
+            if (sampleValue > 0.8)
+                sampleValue = 1.0;
+            if (sampleValue < -0.8)
+                sampleValue = -1.0;
+            buffer[i] = (short) (sampleValue * Short.MAX_VALUE * 0.3);
+            angle += increment;
+            if (angle > 2.0 * Math.PI) {
+                angle -= 2.0 * Math.PI;
+            }
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public short[] wavetable() {
+        for (int i = 0; i < BLOCK; i++) {
+            float sampleValue = oscillator.nextSample();
+            if (sampleValue > 0.8f)
+                sampleValue = 1.0f;
+            if (sampleValue < -0.8f)
+                sampleValue = -1.0f;
+            buffer[i] = (short) (sampleValue * Short.MAX_VALUE * 0.3f);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public short[] mixerEngine() {
+        engineOnly.render(buffer, BLOCK);
+        return buffer;
+    }
+
+    @Benchmark
+    public short[] mixerEngineAndTheme() {
+        engineAndTheme.render(buffer, BLOCK);
+        return buffer;
+    }
+}
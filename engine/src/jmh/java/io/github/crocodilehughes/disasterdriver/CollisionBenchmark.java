@@ -0,0 +1,68 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Cost of one collision query for the car against N obstacles, through the
+ * spatial grid and by brute force over every obstacle.
+ */
+@State(Scope.Thread)
+public class CollisionBenchmark {
+
+    private static final int QUERIES = 1024; // power of two
+
+    @Param({ "100", "1000", "10000" })
+    public int obstacles;
+
+    private float[] x;
+    private float[] y;
+    private CollisionGrid grid;
+    private final OrientedBox[] boxes = new OrientedBox[QUERIES];
+    private int query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        x = new float[obstacles];
+        y = new float[obstacles];
+        grid = new CollisionGrid(obstacles, 256);
+        // Spread along a long stretch of road, like cones placed ahead of the car.
+        for (int i = 0; i < obstacles; i++) {
+            x[i] = random.nextFloat() * 1800 - 900;
+            y[i] = random.nextFloat() * obstacles * 200f;
+            grid.insert(i, x[i], y[i], 40, 40);
+        }
+        for (int q = 0; q < QUERIES; q++) {
+            boxes[q] = new OrientedBox();
+            boxes[q].set(random.nextFloat() * 1800 - 900, random.nextFloat() * obstacles * 200f,
+                    230, 75, random.nextFloat() * 360);
+        }
+    }
+
+    private OrientedBox nextBox() {
+        query = (query + 1) & (QUERIES - 1);
+        return boxes[query];
+    }
+
+    @Benchmark
+    public int grid() {
+        return grid.findOverlap(nextBox());
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        OrientedBox box = nextBox();
+        for (int i = 0; i < obstacles; i++) {
+            if (box.overlaps(x[i], y[i], 40, 40)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
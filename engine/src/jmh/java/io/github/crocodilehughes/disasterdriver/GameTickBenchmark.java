@@ -0,0 +1,39 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One fixed step of the race, with the road course, steering, collision and
+ * obstacle spawning all running. The race restarts whenever the car crashes,
+ * which happens rarely enough not to show.
+ */
+@State(Scope.Thread)
+public class GameTickBenchmark {
+
+    private final GameWorld world = new GameWorld();
+
+    @Setup
+    public void setUp() {
+        // A 1080p phone in landscape at 2.625x density.
+        world.setTrack(2400, 1080, 280, 1840);
+        world.setCar(800, 231, 73.5f, 31.5f);
+        world.setObstacleSize(56, 63);
+        world.setSeed(1);
+        world.reset();
+    }
+
+    @Benchmark
+    public long step() {
+        if (world.isCrashed()) {
+            world.reset();
+        }
+        // Tap left and right in turn so the car weaves instead of spinning out.
+        int phase = world.getTick() % 90;
+        world.setInput(phase >= 10 && phase < 14, phase >= 50 && phase < 54);
+        world.step();
+        return world.getScore();
+    }
+}
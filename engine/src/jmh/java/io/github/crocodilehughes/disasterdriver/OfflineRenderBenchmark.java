@@ -0,0 +1,53 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Time to render one second of each game sound at 48 kHz through the whole
+ * output path (mixer, bursts, buffer controller) into an offline sink.
+ * Divide into 1e9 for the realtime factor.
+ */
+@State(Scope.Thread)
+public class OfflineRenderBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int BURST = 192;
+
+    private AudioMixer mixer;
+    private OfflineAudioSink sink;
+    private AudioOutput output;
+
+    @Setup
+    public void setUp() {
+        mixer = new AudioMixer(SAMPLE_RATE, new NoteCache(SAMPLE_RATE, 512 * 1024));
+        sink = new OfflineAudioSink(SAMPLE_RATE, BURST);
+        output = new AudioOutput(sink, mixer);
+    }
+
+    private int renderSecond(int command) {
+        mixer.onCommand(AudioMixer.CMD_STOP_ENGINE, 0);
+        mixer.onCommand(AudioMixer.CMD_STOP_THEME, 0);
+        mixer.onCommand(AudioMixer.CMD_STOP_MELODY, 0);
+        mixer.onCommand(command, 0);
+        sink.clear();
+        return sink.record(output, SAMPLE_RATE);
+    }
+
+    @Benchmark
+    public int engine() {
+        return renderSecond(AudioMixer.CMD_START_ENGINE);
+    }
+
+    @Benchmark
+    public int sadMelody() {
+        return renderSecond(AudioMixer.CMD_PLAY_MELODY);
+    }
+
+    @Benchmark
+    public int healingTheme() {
+        return renderSecond(AudioMixer.CMD_START_THEME);
+    }
+}
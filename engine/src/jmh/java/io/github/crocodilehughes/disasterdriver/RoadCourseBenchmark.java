@@ -0,0 +1,75 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Generating the road: one new segment per call, as the race does each tick,
+ * and reading back segments anywhere in the buffered window.
+ */
+@State(Scope.Thread)
+public class RoadCourseBenchmark {
+
+    private final RoadCourse course = new RoadCourse();
+    private float distance;
+
+    @Setup
+    public void setUp() {
+        course.setTrack(2400, 1840);
+        course.reset();
+        distance = 0;
+    }
+
+    @Benchmark
+    public float advanceOneSegment() {
+        // Start over long before float distances get too coarse to step by a segment.
+        if (distance > 1_000_000f) {
+            setUp();
+        }
+        distance += RoadCourse.SEGMENT_LENGTH;
+        course.advanceTo(distance);
+        return course.getCenter(distance);
+    }
+
+    /**
+     * A course that has already wrapped its ring, read back at distances spread
+     * over the whole buffered window, in a shuffled order so it isn't one
+     * segment from the cache and branch predictor every call.
+     */
+    @State(Scope.Thread)
+    public static class Window {
+        private static final int LOOKUPS = 1024; // power of two
+
+        final RoadCourse course = new RoadCourse();
+        final float[] distances = new float[LOOKUPS];
+        int next;
+
+        @Setup
+        public void setUp() {
+            course.setTrack(2400, 1840);
+            course.reset();
+            // Well past the 512-segment ring so the lookups wrap around it too.
+            float carDistance = 2000 * RoadCourse.SEGMENT_LENGTH;
+            course.advanceTo(carDistance);
+            // From the car back over most of what's still kept, and ahead over the look-ahead.
+            float from = carDistance - 300 * RoadCourse.SEGMENT_LENGTH;
+            float to = carDistance + 150 * RoadCourse.SEGMENT_LENGTH;
+            Random random = new Random(42);
+            for (int i = 0; i < LOOKUPS; i++) {
+                distances[i] = from + random.nextFloat() * (to - from);
+            }
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public float lookup(Window window) {
+        float d = window.distances[window.next];
+        window.next = (window.next + 1) & (Window.LOOKUPS - 1);
+        return window.course.getCenter(d) + window.course.getHalfWidth(d);
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of audio commands.
+ * Commands are an opcode plus one numeric argument, stored in parallel
+ * primitive arrays so pushing and draining never allocates.
+ *
+ * Only one thread may call {@link #offer} (the main thread) and only one
+ * thread may call {@link #drainTo} (the audio render thread).
+ */
+public class AudioCommandQueue {
+
+    public interface Handler {
+        void onCommand(int command, double arg);
+    }
+
+    private final int[] commands;
+    private final double[] args;
+    private final int mask;
+
+    // Written only by the consumer / producer respectively. The volatile write
+    // of tail publishes the slot contents to the consumer.
+    private volatile long head;
+    private volatile long tail;
+
+    public AudioCommandQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        commands = new int[capacity];
+        args = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Returns false if the queue is full and the command was dropped. */
+    public boolean offer(int command, double arg) {
+        long t = tail;
+        if (t - head == commands.length) {
+            return false;
+        }
+        int slot = (int) (t & mask);
+        commands[slot] = command;
+        args[slot] = arg;
+        tail = t + 1;
+        return true;
+    }
+
+    /** Hands every pending command to the handler, oldest first. Returns how many there were. */
+    public int drainTo(Handler handler) {
+        long h = head;
+        long t = tail;
+        for (long i = h; i < t; i++) {
+            int slot = (int) (i & mask);
+            handler.onCommand(commands[slot], args[slot]);
+        }
+        head = t;
+        return (int) (t - h);
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.util.Arrays;
+
+/**
+ * Mixes a fixed set of voices into 16-bit PCM blocks. Owned by the audio
+ * render thread: it is only ever touched from there, and is driven by
+ * commands drained from an {@link AudioCommandQueue}.
+ *
+ * While muted or suspended the voices hold where they are rather than playing
+ * on silently, so the render thread can stop altogether; when sound comes back
+ * they carry on from the same note and phase behind a short fade-in. The
+ * game-over melody is the exception: it belongs to the moment of the crash, so
+ * muting drops it and it isn't started while muted, rather than having it turn
+ * up later over the menu.
+ */
+public class AudioMixer implements AudioCommandQueue.Handler {
+
+    public static final int CMD_START_ENGINE = 1;
+    public static final int CMD_STOP_ENGINE = 2;
+    public static final int CMD_SET_ENGINE_FREQUENCY = 3;
+    public static final int CMD_SET_MUTED = 4;
+    public static final int CMD_PLAY_MELODY = 5;
+    public static final int CMD_START_THEME = 6;
+    public static final int CMD_STOP_THEME = 7;
+    public static final int CMD_STOP_MELODY = 8;
+    public static final int CMD_SET_SUSPENDED = 9;
+
+    public static final double BASE_ENGINE_FREQUENCY = 220.0;
+
+    // Game over: a descending minor scale (approximate), the last note held twice as long.
+    // Simple sine, clipped slightly for a "retro" feel, with a small pause after each note.
+    public static final Pattern SAD_MELODY = Pattern.phrase(NoteCache.WAVE_CLIPPED_SINE, 0.5f, false, 50,
+            new double[] { 440.0, 392.0, 349.23, 329.63, 293.66, 261.63, 246.94, 220.0 },
+            new int[] { 300, 300, 300, 300, 300, 300, 300, 600 });
+
+    // Menu: approximate "Healing" arpeggios, each chord's arpeggio played up twice.
+    // Chords: C Major -> G Major -> F Major -> G Major. Soft sine, looping.
+    public static final Pattern HEALING_THEME = Pattern.phrase(NoteCache.WAVE_SINE, 0.4f, true, 0,
+            new double[] {
+                    261.6, 329.6, 392.0, 261.6, 329.6, 392.0, // C Maj
+                    196.0, 246.9, 293.7, 196.0, 246.9, 293.7, // G Maj
+                    174.6, 220.0, 261.6, 174.6, 220.0, 261.6, // F Maj
+                    196.0, 246.9, 293.7, 196.0, 246.9, 293.7 // G Maj
+            },
+            new int[] {
+                    120, 120, 120, 120, 120, 120, // Fast arpeggio
+                    120, 120, 120, 120, 120, 120,
+                    120, 120, 120, 120, 120, 120,
+                    120, 120, 120, 120, 120, 120
+            });
+    // Long enough to hide the step from silence, short enough not to be heard as a swell.
+    private static final int FADE_IN_MS = 10;
+
+    private final EngineVoice engine;
+    private final Sequencer melody = new Sequencer();
+    private final Sequencer theme = new Sequencer();
+    private final Sequencer.Sequence sadMelody;
+    private final Sequencer.Sequence healingTheme;
+    private final int fadeInFrames;
+    private int[] mix = new int[0];
+    private boolean muted;
+    private boolean suspended;
+    private int fadePosition;
+
+    public AudioMixer(int sampleRate, NoteCache noteCache) {
+        engine = new EngineVoice(new Wavetable(Wavetable.ENGINE, sampleRate));
+        sadMelody = new Sequencer.Sequence(SAD_MELODY, sampleRate, noteCache);
+        healingTheme = new Sequencer.Sequence(HEALING_THEME, sampleRate, noteCache);
+        fadeInFrames = sampleRate * FADE_IN_MS / 1000;
+        fadePosition = fadeInFrames;
+    }
+
+    @Override
+    public void onCommand(int command, double arg) {
+        switch (command) {
+            case CMD_START_ENGINE:
+                engine.oscillator.setFrequency(BASE_ENGINE_FREQUENCY);
+                engine.active = true;
+                break;
+            case CMD_STOP_ENGINE:
+                engine.active = false;
+                break;
+            case CMD_SET_ENGINE_FREQUENCY:
+                engine.oscillator.setFrequency(arg);
+                break;
+            case CMD_SET_MUTED:
+                if (arg != 0) {
+                    melody.stop();
+                }
+                setSilenced(arg != 0, suspended);
+                break;
+            case CMD_SET_SUSPENDED:
+                setSilenced(muted, arg != 0);
+                break;
+            case CMD_PLAY_MELODY:
+                if (!muted) {
+                    melody.start(sadMelody);
+                }
+                break;
+            case CMD_START_THEME:
+                theme.start(healingTheme);
+                break;
+            case CMD_STOP_THEME:
+                theme.stop();
+                break;
+            case CMD_STOP_MELODY:
+                melody.stop();
+                break;
+        }
+    }
+
+    private void setSilenced(boolean muted, boolean suspended) {
+        boolean wasSilenced = isSilenced();
+        this.muted = muted;
+        this.suspended = suspended;
+        if (wasSilenced && !isSilenced()) {
+            fadePosition = 0;
+        }
+    }
+
+    /** True while any voice still has something to play. */
+    public boolean isActive() {
+        return engine.active || melody.isActive() || theme.isActive();
+    }
+
+    /** Muted or suspended: nothing should be rendered until this clears. */
+    public boolean isSilenced() {
+        return muted || suspended;
+    }
+
+    public void render(short[] out, int frames) {
+        if (isSilenced()) {
+            // Don't advance the voices; they pick up from here when sound comes back.
+            Arrays.fill(out, 0, frames, (short) 0);
+            return;
+        }
+        if (mix.length < frames) {
+            mix = new int[frames];
+        }
+        Arrays.fill(mix, 0, frames, 0);
+
+        if (engine.active)
+            engine.render(mix, frames);
+        if (melody.isActive())
+            melody.render(mix, frames);
+        if (theme.isActive())
+            theme.render(mix, frames);
+
+        for (int i = 0; i < frames; i++) {
+            int sample = mix[i];
+            if (fadePosition < fadeInFrames) {
+                sample = (int) ((long) sample * fadePosition / fadeInFrames);
+                fadePosition++;
+            }
+            if (sample > Short.MAX_VALUE)
+                sample = Short.MAX_VALUE;
+            if (sample < Short.MIN_VALUE)
+                sample = Short.MIN_VALUE;
+            out[i] = (short) sample;
+        }
+    }
+
+    /** The buzzy engine drone, pitched by the race loop. */
+    static final class EngineVoice {
+        final WavetableOscillator oscillator;
+        boolean active;
+
+        EngineVoice(Wavetable wavetable) {
+            oscillator = new WavetableOscillator(wavetable);
+        }
+
+        void render(int[] mix, int frames) {
+            for (int i = 0; i < frames; i++) {
+                // Fundamental + 2nd Harmonic (Octave) + 3rd Harmonic (Fifth), read from the wavetable
+                float sampleValue = oscillator.nextSample();
+
+                // Make it a bit more like a square/pulse for that 8-bit feel
+                if (sampleValue > 0.8f)
+                    sampleValue = 1.0f;
+                if (sampleValue < -0.8f)
+                    sampleValue = -1.0f;
+
+                mix[i] += (short) (sampleValue * Short.MAX_VALUE * 0.3f); // 0.3 volume
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Feeds an {@link AudioMixer} into an {@link AudioSink} one burst at a time,
+ * resizing the sink's buffer with a {@link BufferSizeController} and measuring
+ * how long a sample takes from being written to reaching the speaker.
+ *
+ * Render thread only, apart from the metrics getters. The render thread calls
+ * {@link #update} in a loop and parks whenever it returns false.
+ */
+public class AudioOutput {
+
+    // Start from two bursts (double buffering); never queue more than this many.
+    static final int MIN_BURSTS = 2;
+    static final int MAX_BURSTS = 12;
+    static final int SETTLE_SECONDS = 10;
+
+    /**
+     * Tracer ring size the render thread should ask for. One section per burst,
+     * two events, so about two minutes of 4 ms bursts.
+     */
+    public static final int TRACE_CAPACITY = 1 << 16;
+
+    // Tracer names. The write isn't a section of its own: it's the gap between renders.
+    private static final String TRACE_RENDER = "audio.render";
+    private static final String TRACE_UNDERRUNS = "audio.underruns";
+    private static final String TRACE_BUFFER_FRAMES = "audio.buffer_frames";
+
+    private final AudioSink sink;
+    private final AudioMixer mixer;
+    private final BufferSizeController controller;
+    private final int burstFrames;
+    private final short[] block;
+    private final AudioSink.Timestamp timestamp = new AudioSink.Timestamp();
+
+    private final LatencyHistogram writeTimes;
+    private final LatencyHistogram latency;
+    private long framesWritten;
+    private boolean playing;
+    private int burstsRendered;
+    private volatile int bufferSizeFrames;
+    private volatile int underruns;
+    private volatile long lastLatencyNanos = -1;
+
+    public AudioOutput(AudioSink sink, AudioMixer mixer) {
+        this(sink, mixer, new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    /**
+     * Records into histograms made beforehand, so they can be handed out
+     * before the output itself exists.
+     */
+    public AudioOutput(AudioSink sink, AudioMixer mixer, LatencyHistogram writeTimes, LatencyHistogram latency) {
+        this.sink = sink;
+        this.mixer = mixer;
+        this.writeTimes = writeTimes;
+        this.latency = latency;
+        burstFrames = sink.getFramesPerBurst();
+        block = new short[burstFrames];
+        controller = new BufferSizeController(burstFrames, MIN_BURSTS, MAX_BURSTS,
+                sink.getBufferCapacityFrames(), (long) SETTLE_SECONDS * sink.getSampleRate());
+        bufferSizeFrames = sink.setBufferSizeFrames(controller.getBufferSizeFrames());
+    }
+
+    /**
+     * One turn of the render loop. Returns false when there's nothing to render,
+     * having stopped the sink, so the caller can sleep until the next command.
+     */
+    public boolean update() {
+        if (!mixer.isActive()) {
+            stop();
+            return false;
+        }
+        if (mixer.isSilenced()) {
+            pause();
+            return false;
+        }
+        renderBurst();
+        return true;
+    }
+
+    /** Renders and writes one burst, blocking until the sink takes it. */
+    public void renderBurst() {
+        if (!playing) {
+            sink.play();
+            playing = true;
+        }
+        Tracer.begin(TRACE_RENDER);
+        mixer.render(block, burstFrames);
+        Tracer.end();
+        burstsRendered++;
+
+        long writeStart = System.nanoTime();
+        int written = sink.write(block, burstFrames);
+        long now = System.nanoTime();
+        writeTimes.record(now - writeStart);
+        if (written <= 0)
+            return;
+        framesWritten += written;
+
+        int underrunCount = sink.getUnderrunCount();
+        if (underrunCount != underruns) {
+            Tracer.counter(TRACE_UNDERRUNS, underrunCount);
+        }
+        underruns = underrunCount;
+        int wanted = controller.update(underrunCount, written);
+        if (wanted != bufferSizeFrames) {
+            int applied = sink.setBufferSizeFrames(wanted);
+            if (applied > 0) {
+                bufferSizeFrames = applied;
+                Tracer.counter(TRACE_BUFFER_FRAMES, applied);
+            }
+        }
+        measureLatency(now);
+    }
+
+    /** Lets what's queued play out and stops the sink until the next burst. */
+    public void stop() {
+        if (!playing)
+            return;
+        sink.stop();
+        playing = false;
+        framesWritten = 0;
+    }
+
+    /**
+     * Stops now and throws away what's queued, for mute and backgrounding where
+     * the sound should go at once. The sink ramps the volume down itself.
+     */
+    public void pause() {
+        if (!playing)
+            return;
+        sink.pause();
+        sink.flush();
+        playing = false;
+        framesWritten = 0;
+    }
+
+    private void measureLatency(long now) {
+        if (!sink.getTimestamp(timestamp))
+            return;
+        // The frame just written plays once everything queued ahead of it has; the
+        // timestamp says which frame was playing when, so project that forward to now.
+        long queuedFrames = framesWritten - timestamp.framePosition;
+        long nanos = queuedFrames * 1_000_000_000L / sink.getSampleRate() - (now - timestamp.nanoTime);
+        if (nanos < 0)
+            return;
+        latency.record(nanos);
+        lastLatencyNanos = nanos;
+    }
+
+    /** Bursts rendered since this output was created. */
+    public int getBurstsRendered() {
+        return burstsRendered;
+    }
+
+    public int getBurstFrames() {
+        return burstFrames;
+    }
+
+    public int getBufferSizeFrames() {
+        return bufferSizeFrames;
+    }
+
+    public int getUnderrunCount() {
+        return underruns;
+    }
+
+    /** Latest measured output latency, or -1 before there's a timestamp. */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /** Output latency per burst written, recorded on the render thread. */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /** How long each blocking write took, recorded on the render thread. */
+    public LatencyHistogram getWriteTimes() {
+        return writeTimes;
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Where rendered audio goes: an AudioTrack on a device, or a simulated output
+ * in tests. Mono 16-bit PCM. Only the audio render thread calls into a sink.
+ */
+public interface AudioSink {
+
+    /** Where the hardware had got to at a point in time. */
+    final class Timestamp {
+        public long framePosition;
+        public long nanoTime; // System.nanoTime() base
+    }
+
+    int getSampleRate();
+
+    /** Frames the device consumes per period; writes and buffer sizes are multiples of this. */
+    int getFramesPerBurst();
+
+    /** The most the buffer can ever be resized to. */
+    int getBufferCapacityFrames();
+
+    /** Resizes the part of the buffer in use and returns the size actually applied. */
+    int setBufferSizeFrames(int frames);
+
+    /** Total underruns since the sink was opened. */
+    int getUnderrunCount();
+
+    void play();
+
+    /** Stops after what's already queued plays out. The frame position starts over from 0. */
+    void stop();
+
+    /** Stops playback straight away, keeping what's queued until {@link #flush}. */
+    void pause();
+
+    /** Throws away everything queued while paused. The frame position starts over from 0. */
+    void flush();
+
+    /** Blocks until all the frames are queued. Returns the number written, or a negative error. */
+    int write(short[] buffer, int frames);
+
+    /** Fills in the latest presentation timestamp; false if there isn't one yet. */
+    boolean getTimestamp(Timestamp out);
+}
@@ -0,0 +1,82 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Picks the output buffer size at runtime: as small as the device can keep fed,
+ * between a configured minimum and maximum number of bursts.
+ *
+ * Every new underrun grows the buffer by one burst. After a long enough clean
+ * stretch it tries one burst smaller; if that brings an underrun straight back,
+ * it grows again and waits twice as long before the next try, so a device that
+ * can't cope settles instead of glitching over and over.
+ */
+public class BufferSizeController {
+
+    private static final int MAX_BACKOFF = 8;
+
+    private final int burstFrames;
+    private final int minFrames;
+    private final int maxFrames;
+    private final long settleFrames;
+
+    private int bufferSizeFrames;
+    private int lastUnderrunCount = -1;
+    private long cleanFrames;
+    private boolean probing;
+    private int backoff = 1;
+    private int grows;
+
+    /**
+     * @param settleFrames clean frames to play before trying a smaller buffer
+     */
+    public BufferSizeController(int burstFrames, int minBursts, int maxBursts, int capacityFrames, long settleFrames) {
+        this.burstFrames = burstFrames;
+        this.minFrames = Math.min(minBursts * burstFrames, capacityFrames);
+        this.maxFrames = Math.max(minFrames, Math.min(maxBursts * burstFrames, capacityFrames));
+        this.settleFrames = settleFrames;
+        this.bufferSizeFrames = minFrames;
+    }
+
+    public int getBufferSizeFrames() {
+        return bufferSizeFrames;
+    }
+
+    /** How many times it has had to grow the buffer. */
+    public int getGrowCount() {
+        return grows;
+    }
+
+    /** Call after each write with the sink's underrun total; returns the buffer size to use now. */
+    public int update(int underrunCount, int framesWritten) {
+        if (lastUnderrunCount < 0) {
+            lastUnderrunCount = underrunCount; // whatever happened before we started isn't ours
+        }
+        if (underrunCount > lastUnderrunCount) {
+            lastUnderrunCount = underrunCount;
+            cleanFrames = 0;
+            if (probing) {
+                // The smaller size we just tried isn't enough; don't try again so soon.
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                probing = false;
+            }
+            if (bufferSizeFrames < maxFrames) {
+                bufferSizeFrames = Math.min(bufferSizeFrames + burstFrames, maxFrames);
+                grows++;
+            }
+            return bufferSizeFrames;
+        }
+
+        cleanFrames += framesWritten;
+        if (cleanFrames >= settleFrames * backoff) {
+            cleanFrames = 0;
+            if (probing) {
+                // Survived a whole window at the smaller size.
+                probing = false;
+            }
+            if (bufferSizeFrames > minFrames) {
+                bufferSizeFrames = Math.max(bufferSizeFrames - burstFrames, minFrames);
+                probing = true;
+            }
+        }
+        return bufferSizeFrames;
+    }
+}
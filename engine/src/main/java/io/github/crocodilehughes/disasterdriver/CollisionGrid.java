@@ -0,0 +1,129 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.util.Arrays;
+
+/**
+ * Broadphase for obstacles: a spatial hash of uniform cells over a fixed
+ * number of obstacle slots. Each obstacle is filed under the cell holding its
+ * center, and queries widen their search by the largest obstacle registered,
+ * so a lookup only visits the handful of cells around the car no matter how
+ * many obstacles exist.
+ *
+ * Everything lives in preallocated primitive arrays; inserting, removing and
+ * querying never allocate.
+ */
+public class CollisionGrid {
+
+    private static final int BUCKET_COUNT = 1024; // power of two
+    private static final int BUCKET_MASK = BUCKET_COUNT - 1;
+    private static final int NONE = -1;
+
+    private final float cellSize;
+    private final int[] bucketHeads = new int[BUCKET_COUNT];
+
+    private final int[] next;
+    private final int[] bucketOf;
+    private final float[] x;
+    private final float[] y;
+    private final float[] halfWidths;
+    private final float[] halfHeights;
+    private float maxHalfExtent;
+    private int count;
+
+    public CollisionGrid(int capacity, float cellSize) {
+        this.cellSize = cellSize;
+        next = new int[capacity];
+        bucketOf = new int[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        halfWidths = new float[capacity];
+        halfHeights = new float[capacity];
+        clear();
+    }
+
+    public void clear() {
+        Arrays.fill(bucketHeads, NONE);
+        Arrays.fill(bucketOf, NONE);
+        count = 0;
+        maxHalfExtent = 0;
+    }
+
+    public int getCapacity() {
+        return next.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Registers obstacle slot {@code id}. The slot must not already be in the grid. */
+    public void insert(int id, float centerX, float centerY, float halfWidth, float halfHeight) {
+        x[id] = centerX;
+        y[id] = centerY;
+        halfWidths[id] = halfWidth;
+        halfHeights[id] = halfHeight;
+        maxHalfExtent = Math.max(maxHalfExtent, Math.max(halfWidth, halfHeight));
+
+        int bucket = bucketFor(cell(centerX), cell(centerY));
+        bucketOf[id] = bucket;
+        next[id] = bucketHeads[bucket];
+        bucketHeads[bucket] = id;
+        count++;
+    }
+
+    public void remove(int id) {
+        int bucket = bucketOf[id];
+        if (bucket == NONE)
+            return;
+        int previous = NONE;
+        for (int i = bucketHeads[bucket]; i != NONE; i = next[i]) {
+            if (i == id) {
+                if (previous == NONE) {
+                    bucketHeads[bucket] = next[i];
+                } else {
+                    next[previous] = next[i];
+                }
+                break;
+            }
+            previous = i;
+        }
+        bucketOf[id] = NONE;
+        count--;
+    }
+
+    public boolean contains(int id) {
+        return bucketOf[id] != NONE;
+    }
+
+    /** Returns the id of an obstacle the box touches, or -1 if it's clear. */
+    public int findOverlap(OrientedBox box) {
+        if (count == 0)
+            return NONE;
+        float reachX = box.getExtentX() + maxHalfExtent;
+        float reachY = box.getExtentY() + maxHalfExtent;
+        int minCellX = cell(box.getCenterX() - reachX);
+        int maxCellX = cell(box.getCenterX() + reachX);
+        int minCellY = cell(box.getCenterY() - reachY);
+        int maxCellY = cell(box.getCenterY() + reachY);
+
+        for (int cy = minCellY; cy <= maxCellY; cy++) {
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                // Other cells can share a bucket; the narrow test weeds those out.
+                for (int i = bucketHeads[bucketFor(cx, cy)]; i != NONE; i = next[i]) {
+                    if (box.overlaps(x[i], y[i], halfWidths[i], halfHeights[i])) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return NONE;
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static int bucketFor(int cellX, int cellY) {
+        return ((cellX * 73856093) ^ (cellY * 19349663)) & BUCKET_MASK;
+    }
+}
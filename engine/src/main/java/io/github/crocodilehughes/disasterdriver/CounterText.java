@@ -0,0 +1,65 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * A label followed by a number, kept in one reusable char buffer so updating
+ * the HUD doesn't build Strings. Hand the buffer to TextView.setText(char[],
+ * int, int). Only the formatting is checked to be allocation-free; what the
+ * TextView does with the chars (its layout included) isn't covered by any
+ * test, which is why the HUD refreshes at a capped rate.
+ */
+public class CounterText {
+
+    // Long.MIN_VALUE is 20 characters with its sign.
+    private static final int MAX_DIGITS = 20;
+
+    private final char[] chars;
+    private final int prefixLength;
+    private int length;
+    private long value;
+    private boolean hasValue;
+
+    public CounterText(String prefix) {
+        prefixLength = prefix.length();
+        chars = new char[prefixLength + MAX_DIGITS];
+        prefix.getChars(0, prefixLength, chars, 0);
+        length = prefixLength;
+    }
+
+    /** Updates the text to show {@code newValue}. Returns false if it was already showing it. */
+    public boolean set(long newValue) {
+        if (hasValue && newValue == value)
+            return false;
+        value = newValue;
+        hasValue = true;
+
+        // Write digits backwards from the end of the buffer, then slide them down.
+        int position = chars.length;
+        long remaining = newValue;
+        boolean negative = remaining < 0;
+        do {
+            int digit = (int) (remaining % 10);
+            chars[--position] = (char) ('0' + (negative ? -digit : digit));
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            chars[--position] = '-';
+        }
+        int digits = chars.length - position;
+        System.arraycopy(chars, position, chars, prefixLength, digits);
+        length = prefixLength + digits;
+        return true;
+    }
+
+    public char[] getChars() {
+        return chars;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
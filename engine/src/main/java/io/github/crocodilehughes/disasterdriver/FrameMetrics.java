@@ -0,0 +1,133 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.util.Locale;
+
+/**
+ * Per-race timing: how long each game tick takes, how far apart frames land,
+ * how long the audio thread blocks writing each buffer, how long written
+ * audio takes to reach the speaker and how long a touch takes to reach the
+ * screen. A frame counts as
+ * missed for every vsync it overshoots by more than half a period.
+ *
+ * Frames are recorded on the render thread; the audio histograms belong to the
+ * audio thread. Reports can be built from any thread, and a reset can be asked
+ * for from any thread: each recording thread does its own clearing, and until
+ * it has the numbers read as empty.
+ */
+public class FrameMetrics {
+
+    private final LatencyHistogram tickTime = new LatencyHistogram();
+    private final LatencyHistogram frameInterval = new LatencyHistogram();
+    private final LatencyHistogram inputLatency = new LatencyHistogram();
+    private final LatencyHistogram audioWriteTime;
+    private final LatencyHistogram audioLatency;
+    private volatile long vsyncNanos;
+    // Render thread only.
+    private long frames;
+    private long missedFrames;
+    // Set by any thread, applied by the render thread before its next frame.
+    private volatile boolean resetRequested;
+
+    public FrameMetrics(LatencyHistogram audioWriteTime, LatencyHistogram audioLatency, float refreshRate) {
+        this.audioWriteTime = audioWriteTime;
+        this.audioLatency = audioLatency;
+        setRefreshRate(refreshRate);
+    }
+
+    public void setRefreshRate(float refreshRate) {
+        vsyncNanos = (long) (1_000_000_000L / refreshRate);
+    }
+
+    /** Starts a fresh set of numbers for a new race. Any thread. */
+    public void reset() {
+        tickTime.requestReset();
+        frameInterval.requestReset();
+        inputLatency.requestReset();
+        audioWriteTime.requestReset();
+        audioLatency.requestReset();
+        resetRequested = true;
+    }
+
+    /** Render thread only. A frame interval of 0 (first frame after a pause) is ignored. */
+    public void recordFrame(long intervalNanos, long tickNanos) {
+        if (resetRequested) {
+            resetRequested = false;
+            frames = 0;
+            missedFrames = 0;
+        }
+        tickTime.record(tickNanos);
+        if (intervalNanos <= 0)
+            return;
+        frameInterval.record(intervalNanos);
+        frames++;
+        long period = vsyncNanos;
+        long vsyncs = (intervalNanos + period / 2) / period;
+        if (vsyncs > 1) {
+            missedFrames += vsyncs - 1;
+        }
+    }
+
+    /**
+     * Render thread only. From a touch to posting the first frame that shows its
+     * effect; the display lights it up about one refresh after that.
+     */
+    public void recordInputLatency(long nanos) {
+        if (nanos > 0) {
+            inputLatency.record(nanos);
+        }
+    }
+
+    public long getMissedFrames() {
+        return resetRequested ? 0 : missedFrames;
+    }
+
+    public long getFrames() {
+        return resetRequested ? 0 : frames;
+    }
+
+    /** Multi-line key=value report; the format is kept stable so runs can be diffed. */
+    public void appendReport(StringBuilder out) {
+        out.append("refresh_hz=").append(String.format(Locale.US, "%.1f", 1e9 / vsyncNanos)).append('\n');
+        out.append("frames=").append(getFrames()).append('\n');
+        out.append("missed_frames=").append(getMissedFrames()).append('\n');
+        appendHistogram(out, "tick", tickTime);
+        appendHistogram(out, "frame_interval", frameInterval);
+        appendHistogram(out, "input_latency", inputLatency);
+        appendHistogram(out, "audio_write", audioWriteTime);
+        appendHistogram(out, "audio_latency", audioLatency);
+    }
+
+    /** One-line summary for the debug overlay. */
+    public void appendSummary(StringBuilder out) {
+        out.append("tick p50/p99/max ");
+        appendMillis(out, tickTime.getPercentile(50)).append('/');
+        appendMillis(out, tickTime.getPercentile(99)).append('/');
+        appendMillis(out, tickTime.getMax()).append(" ms\n");
+        out.append("frame p50/p95/p99 ");
+        appendMillis(out, frameInterval.getPercentile(50)).append('/');
+        appendMillis(out, frameInterval.getPercentile(95)).append('/');
+        appendMillis(out, frameInterval.getPercentile(99)).append(" ms\n");
+        out.append("missed ").append(getMissedFrames()).append(" / ").append(getFrames()).append('\n');
+        out.append("input latency p50/p99 ");
+        appendMillis(out, inputLatency.getPercentile(50)).append('/');
+        appendMillis(out, inputLatency.getPercentile(99)).append(" ms\n");
+        out.append("audio latency p50/p99 ");
+        appendMillis(out, audioLatency.getPercentile(50)).append('/');
+        appendMillis(out, audioLatency.getPercentile(99)).append(" ms");
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(name).append(".count=").append(histogram.getCount()).append('\n');
+        out.append(name).append(".mean_us=").append(histogram.getMean() / 1000).append('\n');
+        out.append(name).append(".p50_us=").append(histogram.getPercentile(50) / 1000).append('\n');
+        out.append(name).append(".p95_us=").append(histogram.getPercentile(95) / 1000).append('\n');
+        out.append(name).append(".p99_us=").append(histogram.getPercentile(99) / 1000).append('\n');
+        out.append(name).append(".max_us=").append(histogram.getMax() / 1000).append('\n');
+    }
+
+    private static StringBuilder appendMillis(StringBuilder out, long nanos) {
+        // One decimal place without going through String.format.
+        long tenths = (nanos + 50_000) / 100_000;
+        return out.append(tenths / 10).append('.').append(tenths % 10);
+    }
+}
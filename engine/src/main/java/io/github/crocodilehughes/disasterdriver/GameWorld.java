@@ -0,0 +1,391 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Headless race simulation. All state is kept in primitive fields and advanced
+ * in fixed steps, so the same run plays out identically on a 60, 90 or 120 Hz
+ * display and can be driven from a plain JVM without any views. Trigonometry
+ * goes through StrictMath, whose results are the same bits on every VM, so a
+ * race recorded on a device replays exactly on a desktop JVM.
+ */
+public class GameWorld {
+
+    public static final int TICKS_PER_SECOND = 60;
+    public static final float STEP_SECONDS = 1f / TICKS_PER_SECOND;
+
+    // The old per-frame constants, converted to per-second rates at 60 fps.
+    static final float ROAD_MOVE_SPEED = 15.0f * TICKS_PER_SECOND; // px per second
+    static final float CAR_DRIFT_SPEED = 5.0f * TICKS_PER_SECOND; // px per second
+    static final float TURN_RATE = 2.0f * TICKS_PER_SECOND; // degrees per second
+    // Tilt steering comes in whole steps so a replay feeds the world exactly the same numbers.
+    public static final int TILT_FULL_SCALE = 64;
+    static final float ROAD_SHRINK_RATE = 0.00005f * TICKS_PER_SECOND; // scale per second
+    static final float MIN_ROAD_SCALE = 0.3f;
+
+    static final int MAX_OBSTACLES = 256;
+    private static final float OBSTACLE_CELL_SIZE = 256f;
+    // Difficulty curve: the first obstacle comes after START_GAP of driving, then the gap
+    // between them closes in from START to MIN as the score climbs (halfway at HALF_SCORE).
+    static final float OBSTACLE_START_GAP = 3.0f * ROAD_MOVE_SPEED; // px of scroll
+    static final float OBSTACLE_MIN_GAP = 0.6f * ROAD_MOVE_SPEED;
+    static final float OBSTACLE_HALF_SCORE = 30000f;
+    // Rows of cones get more common too, up to this share of spawns.
+    static final float MAX_ROW_CHANCE = 0.5f;
+    private static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+    // Track geometry, measured from the layout once the race starts.
+    private float screenWidth;
+    private float screenHeight;
+    private float roadLeft;
+    private float roadWidth;
+    // The car's body box, relative to the sprite's pivot which sits at carCenterY.
+    private float carCenterY;
+    private float carHalfWidth;
+    private float carHalfHeight;
+    private float carBodyOffsetY;
+
+    private final RoadCourse course = new RoadCourse();
+    // Obstacles live in road space: x relative to the road's center line, y relative to
+    // the scrolled ground, so they stay put in the grid while the road moves on screen.
+    private final ObstaclePool obstacles = new ObstaclePool(MAX_OBSTACLES, OBSTACLE_CELL_SIZE);
+    private final OrientedBox carBox = new OrientedBox();
+
+    // Input
+    private boolean turningLeft;
+    private boolean turningRight;
+    private int tilt;
+
+    // Simulation state
+    private int tick;
+    private float totalTime;
+    private float roadOffset;
+    private float roadScale = 1f;
+    private float roadHalfWidth;
+    private float carX;
+    private float carRotation;
+    private float startLineOffset;
+    private long score;
+    private boolean crashed;
+    private float nextObstacleScroll;
+    private long seed = DEFAULT_SEED;
+    private long randomState;
+
+    // State as of the previous tick, used to interpolate between ticks when rendering.
+    private float prevDistance;
+    private float prevCarX;
+    private float prevCarRotation;
+    private float prevStartLineOffset;
+
+    public void setTrack(float screenWidth, float screenHeight, float roadLeft, float roadWidth) {
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.roadLeft = roadLeft;
+        this.roadWidth = roadWidth;
+        course.setTrack(screenWidth, roadWidth);
+    }
+
+    /**
+     * Sets where the car sprite's pivot is on screen and the size of its body,
+     * whose center sits bodyOffsetY below the pivot when the car points up.
+     */
+    public void setCar(float centerY, float halfWidth, float halfHeight, float bodyOffsetY) {
+        this.carCenterY = centerY;
+        this.carHalfWidth = halfWidth;
+        this.carHalfHeight = halfHeight;
+        this.carBodyOffsetY = bodyOffsetY;
+    }
+
+    /** Size of a single cone's body; rows of cones are built from it. */
+    public void setObstacleSize(float coneHalfWidth, float coneHalfHeight) {
+        obstacles.setConeSize(coneHalfWidth, coneHalfHeight);
+    }
+
+    /** Seeds where obstacles appear. Takes effect on the next {@link #reset()}. */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /** Writes everything the set* methods configure, so a race can be rebuilt elsewhere. */
+    void writeSetup(DataOutput out) throws IOException {
+        out.writeFloat(screenWidth);
+        out.writeFloat(screenHeight);
+        out.writeFloat(roadLeft);
+        out.writeFloat(roadWidth);
+        out.writeFloat(carCenterY);
+        out.writeFloat(carHalfWidth);
+        out.writeFloat(carHalfHeight);
+        out.writeFloat(carBodyOffsetY);
+        out.writeFloat(obstacles.getHalfWidth(ObstaclePool.TYPE_CONE));
+        out.writeFloat(obstacles.getHalfHeight(ObstaclePool.TYPE_CONE));
+        out.writeLong(seed);
+    }
+
+    /** Reads what writeSetup wrote; version 1 setups also carried lane line geometry, now the renderer's. */
+    void readSetup(DataInput in, int version) throws IOException {
+        setTrack(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+        setCar(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+        if (version < 2) {
+            int lines = in.readInt();
+            in.skipBytes((lines + 2) * 4);
+        }
+        setObstacleSize(in.readFloat(), in.readFloat());
+        setSeed(in.readLong());
+    }
+
+    public void setInput(boolean turningLeft, boolean turningRight) {
+        this.turningLeft = turningLeft;
+        this.turningRight = turningRight;
+    }
+
+    /**
+     * Analog steering on top of the buttons, from -TILT_FULL_SCALE (full left)
+     * to TILT_FULL_SCALE (full right), which turns as fast as holding a button.
+     */
+    public void setTilt(int tilt) {
+        this.tilt = Math.max(-TILT_FULL_SCALE, Math.min(TILT_FULL_SCALE, tilt));
+    }
+
+    public void reset() {
+        course.reset();
+        obstacles.clear();
+        tick = 0;
+        totalTime = 0f;
+        roadOffset = 0f;
+        roadScale = 1f;
+        roadHalfWidth = roadWidth / 2;
+        carX = 0f;
+        carRotation = 0f;
+        startLineOffset = 0f;
+        score = 0;
+        crashed = false;
+        nextObstacleScroll = OBSTACLE_START_GAP;
+        randomState = seed == 0 ? DEFAULT_SEED : seed;
+        turningLeft = false;
+        turningRight = false;
+        tilt = 0;
+        savePrevious();
+    }
+
+    /**
+     * Advances the race by one fixed step of {@link #STEP_SECONDS}. Does nothing
+     * once the car has crashed.
+     */
+    public void step() {
+        if (crashed)
+            return;
+        savePrevious();
+
+        tick++;
+        totalTime = tick * STEP_SECONDS;
+
+        // The road at the car is the course segment we've just scrolled onto.
+        float distance = getDistance();
+        course.advanceTo(distance);
+        roadOffset = course.getCenter(distance);
+        roadScale = course.getScale(distance);
+        roadHalfWidth = course.getHalfWidth(distance);
+
+        if (turningLeft) {
+            carRotation -= TURN_RATE * STEP_SECONDS;
+        }
+        if (turningRight) {
+            carRotation += TURN_RATE * STEP_SECONDS;
+        }
+        if (tilt != 0) {
+            carRotation += TURN_RATE * STEP_SECONDS * tilt / TILT_FULL_SCALE;
+        }
+
+        double angleInRadians = StrictMath.toRadians(carRotation);
+        float newCarX = carX + (float) (StrictMath.sin(angleInRadians) * CAR_DRIFT_SPEED * STEP_SECONDS);
+
+        if (checkCollision(newCarX)) {
+            crashed = true;
+            return;
+        }
+        carX = newCarX;
+
+        float rotation = carRotation % 360;
+        if (rotation < 0)
+            rotation += 360;
+        boolean isUpsideDown = rotation > 90 && rotation < 270;
+        float verticalMove = (isUpsideDown ? -ROAD_MOVE_SPEED : ROAD_MOVE_SPEED) * STEP_SECONDS;
+        startLineOffset += verticalMove;
+
+        score = (tick * 1000L) / TICKS_PER_SECOND;
+        updateObstacles();
+    }
+
+    private void updateObstacles() {
+        // Drop whatever has scrolled off the bottom, or a full screen off the top when reversing.
+        for (int id = 0; id < obstacles.getCapacity(); id++) {
+            if (!obstacles.isActive(id))
+                continue;
+            float top = obstacles.getY(id) + startLineOffset - obstacles.getHalfHeight(obstacles.getType(id));
+            if (top > screenHeight || top < -2 * screenHeight) {
+                obstacles.release(id);
+            }
+        }
+
+        // Only new ground brings new obstacles; reversing over old ground doesn't.
+        if (startLineOffset < nextObstacleScroll)
+            return;
+        nextObstacleScroll = startLineOffset + getObstacleGap(score);
+
+        int type = nextRandom() < getRowChance(score) ? ObstaclePool.TYPE_CONE_ROW : ObstaclePool.TYPE_CONE;
+        float halfWidth = obstacles.getHalfWidth(type);
+        float halfHeight = obstacles.getHalfHeight(type);
+        // Anywhere across the road as it is now, just above the top of the screen.
+        float room = Math.max(0f, roadHalfWidth - halfWidth);
+        float x = (nextRandom() * 2 - 1) * room;
+        float y = -halfHeight - startLineOffset;
+        obstacles.spawn(type, x, y);
+    }
+
+    /** Scroll distance between obstacles at the given score. */
+    static float getObstacleGap(long score) {
+        float progress = score / (score + OBSTACLE_HALF_SCORE);
+        return OBSTACLE_START_GAP + (OBSTACLE_MIN_GAP - OBSTACLE_START_GAP) * progress;
+    }
+
+    static float getRowChance(long score) {
+        return MAX_ROW_CHANCE * score / (score + 2 * OBSTACLE_HALF_SCORE);
+    }
+
+    /** xorshift64*, uniform in [0, 1). Kept in a primitive so the run stays repeatable and allocation-free. */
+    private float nextRandom() {
+        randomState ^= randomState >>> 12;
+        randomState ^= randomState << 25;
+        randomState ^= randomState >>> 27;
+        return ((randomState * 0x2545F4914F6CDD1DL) >>> 40) / (float) (1 << 24);
+    }
+
+    private void savePrevious() {
+        prevDistance = getDistance();
+        prevCarX = carX;
+        prevCarRotation = carRotation;
+        prevStartLineOffset = startLineOffset;
+    }
+
+    private boolean checkCollision(float newCarX) {
+        // The body sits below the sprite's pivot, so swing that offset round with the car.
+        double radians = StrictMath.toRadians(carRotation);
+        float bodyX = screenWidth / 2f + newCarX - carBodyOffsetY * (float) StrictMath.sin(radians);
+        float bodyY = carCenterY + carBodyOffsetY * (float) StrictMath.cos(radians);
+        carBox.set(bodyX, bodyY, carHalfWidth, carHalfHeight, carRotation);
+
+        float roadCenterX = getRoadCenterX();
+        if (carBox.crossesEdges(roadCenterX - roadHalfWidth, roadCenterX + roadHalfWidth)) {
+            return true;
+        }
+
+        if (obstacles.size() == 0) {
+            return false;
+        }
+        carBox.translate(-getRoadCenterX(), -startLineOffset);
+        return obstacles.findOverlap(carBox) != -1;
+    }
+
+    /** Where the middle of the road is on screen right now. */
+    public float getRoadCenterX() {
+        return roadLeft + roadWidth / 2 + roadOffset;
+    }
+
+    private static float lerp(float from, float to, float alpha) {
+        return from + (to - from) * alpha;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    /** How far the road has scrolled past the car, in course units. */
+    public float getDistance() {
+        return tick * RoadCourse.SEGMENT_LENGTH;
+    }
+
+    public RoadCourse getCourse() {
+        return course;
+    }
+
+    public ObstaclePool getObstacles() {
+        return obstacles;
+    }
+
+    /** How far the ground has scrolled down the screen; negative while driving upside down. */
+    public float getScroll() {
+        return startLineOffset;
+    }
+
+    public float getTotalTime() {
+        return totalTime;
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    public boolean isCrashed() {
+        return crashed;
+    }
+
+    public boolean isTurning() {
+        return turningLeft || turningRight || tilt != 0;
+    }
+
+    public float getRoadOffset() {
+        return roadOffset;
+    }
+
+    public float getRoadScale() {
+        return roadScale;
+    }
+
+    public float getCarX() {
+        return carX;
+    }
+
+    public float getCarRotation() {
+        return carRotation;
+    }
+
+    /** Half the road's width at the car, shrinking as the race goes on. */
+    public float getRoadHalfWidth() {
+        return roadHalfWidth;
+    }
+
+    // Interpolated getters: alpha is how far we are between the previous tick and the current one.
+
+    /**
+     * Screen x of the middle of the road at screen row y. The car's row shows
+     * the course where the car is; rows above it show the road still to come,
+     * one pixel of course per pixel of screen, so the curve ahead scrolls down
+     * onto the car.
+     */
+    public float getRoadCenterX(float y, float alpha) {
+        return roadLeft + roadWidth / 2 + course.getCenter(getRowDistance(y, alpha));
+    }
+
+    /** Half the road's width at screen row y; see {@link #getRoadCenterX(float, float)}. */
+    public float getRoadHalfWidth(float y, float alpha) {
+        return course.getHalfWidth(getRowDistance(y, alpha));
+    }
+
+    private float getRowDistance(float y, float alpha) {
+        return Math.max(0f, lerp(prevDistance, getDistance(), alpha) + carCenterY - y);
+    }
+
+    public float getCarX(float alpha) {
+        return lerp(prevCarX, carX, alpha);
+    }
+
+    public float getCarRotation(float alpha) {
+        return lerp(prevCarRotation, carRotation, alpha);
+    }
+
+    public float getStartLineOffset(float alpha) {
+        return lerp(prevStartLineOffset, startLineOffset, alpha);
+    }
+}
@@ -0,0 +1,222 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Everything needed to play a race again: the world's setup (track geometry
+ * and obstacle seed), every change of steering input with the tick it took
+ * effect on, and how the race ended.
+ *
+ * Steering changes are stored as varints of (ticks since the last change << 3 |
+ * tilt changed << 2 | button state), followed by the new tilt as a zigzag varint
+ * when it changed, so a typical minute-long race fits in a few hundred bytes. Beginning a log
+ * and recording into it reuse the same buffers from race to race.
+ */
+public class InputLog {
+
+    private static final int MAGIC = 0x4444524C; // "DDRL"
+    // 2: lane lines are no longer part of the world's setup.
+    // 3: tilt steering; changes carry a tilt flag.
+    private static final int VERSION = 3;
+
+    static final int STATE_LEFT = 1;
+    static final int STATE_RIGHT = 2;
+    static final int TILT_CHANGED = 4;
+
+    private final ByteArrayOutputStream setup = new ByteArrayOutputStream(128);
+    private final DataOutputStream setupOut = new DataOutputStream(setup);
+    private int version = VERSION;
+    private byte[] events = new byte[4096];
+    private int length;
+    private int eventCount;
+    private int lastTick;
+    private int lastState;
+    private int lastTilt;
+
+    private int finalTick;
+    private long finalScore;
+    private boolean crashed;
+
+    /** Starts a new log for a race the world has just been reset for. */
+    public void begin(GameWorld world) {
+        setup.reset();
+        try {
+            world.writeSetup(setupOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory, can't happen
+        }
+        version = VERSION;
+        length = 0;
+        eventCount = 0;
+        lastTick = 0;
+        lastState = 0;
+        lastTilt = 0;
+        finalTick = 0;
+        finalScore = 0;
+        crashed = false;
+    }
+
+    /** Call before each step with the input the step is about to run with. */
+    public void record(int tick, boolean turningLeft, boolean turningRight) {
+        record(tick, turningLeft, turningRight, 0);
+    }
+
+    /** Same, for races steered by tilt as well; see {@link GameWorld#setTilt}. */
+    public void record(int tick, boolean turningLeft, boolean turningRight, int tilt) {
+        int state = (turningLeft ? STATE_LEFT : 0) | (turningRight ? STATE_RIGHT : 0);
+        if (state == lastState && tilt == lastTilt)
+            return;
+        boolean tiltChanged = tilt != lastTilt;
+        writeVarint(((long) (tick - lastTick) << 3) | (tiltChanged ? TILT_CHANGED : 0) | state);
+        if (tiltChanged) {
+            writeVarint((tilt << 1) ^ (tilt >> 31));
+        }
+        lastTick = tick;
+        lastState = state;
+        lastTilt = tilt;
+        eventCount++;
+    }
+
+    /** Notes how the race ended, for replays to check against. */
+    public void finish(GameWorld world) {
+        finalTick = world.getTick();
+        finalScore = world.getScore();
+        crashed = world.isCrashed();
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getFinalTick() {
+        return finalTick;
+    }
+
+    public long getFinalScore() {
+        return finalScore;
+    }
+
+    public boolean isCrashed() {
+        return crashed;
+    }
+
+    /** Configures the world the way it was when this log began. Call reset() afterwards. */
+    public void applySetup(GameWorld world) throws IOException {
+        world.readSetup(new DataInputStream(new ByteArrayInputStream(setup.toByteArray())), version);
+    }
+
+    private void writeVarint(long value) {
+        if (length + 10 > events.length) {
+            byte[] grown = new byte[events.length * 2];
+            System.arraycopy(events, 0, grown, 0, length);
+            events = grown;
+        }
+        while ((value & ~0x7FL) != 0) {
+            events[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        events[length++] = (byte) value;
+    }
+
+    /** Walks the recorded steering changes in order. */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    public class Reader {
+        private int position;
+        private int tick;
+        private int state;
+        private int tilt;
+
+        public boolean hasNext() {
+            return position < length;
+        }
+
+        /** Moves to the next change and returns the tick it takes effect on. */
+        public int next() {
+            long value = readVarint();
+            if (version < 3) {
+                // No tilt before version 3, and the tick delta sat one bit lower.
+                tick += (int) (value >>> 2);
+                state = (int) (value & 3);
+                return tick;
+            }
+            tick += (int) (value >>> 3);
+            state = (int) (value & 3);
+            if ((value & TILT_CHANGED) != 0) {
+                int zigzag = (int) readVarint();
+                tilt = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            return tick;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = events[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        public boolean isTurningLeft() {
+            return (state & STATE_LEFT) != 0;
+        }
+
+        public boolean isTurningRight() {
+            return (state & STATE_RIGHT) != 0;
+        }
+
+        public int getTilt() {
+            return tilt;
+        }
+    }
+
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(setup.size());
+        setup.writeTo(out);
+        out.writeInt(finalTick);
+        out.writeLong(finalScore);
+        out.writeBoolean(crashed);
+        out.writeInt(eventCount);
+        out.writeInt(length);
+        out.write(events, 0, length);
+        out.flush();
+    }
+
+    public static InputLog readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not an input log");
+        int version = in.readUnsignedShort();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported input log version " + version);
+
+        InputLog log = new InputLog();
+        log.version = version;
+        byte[] setup = new byte[in.readInt()];
+        in.readFully(setup);
+        log.setup.write(setup);
+        log.finalTick = in.readInt();
+        log.finalScore = in.readLong();
+        log.crashed = in.readBoolean();
+        log.eventCount = in.readInt();
+        log.length = in.readInt();
+        log.events = new byte[Math.max(log.length, 16)];
+        in.readFully(log.events, 0, log.length);
+        return log;
+    }
+}
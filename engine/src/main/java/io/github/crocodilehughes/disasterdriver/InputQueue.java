@@ -0,0 +1,126 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Lock-free single-producer/single-consumer queue of steering button presses
+ * and releases, each stamped with the time the touch happened (System.nanoTime()
+ * base). The simulation applies them at the tick they belong to rather than
+ * whenever the next frame happens to look.
+ *
+ * Only the main thread may call {@link #offer}; everything else belongs to the
+ * render thread.
+ */
+public class InputQueue {
+
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+
+    private final long[] times;
+    private final int[] buttons;
+    private final boolean[] pressed;
+    private final int mask;
+
+    // Written only by the consumer / producer respectively. The volatile write
+    // of tail publishes the slot contents to the consumer.
+    private volatile long head;
+    private volatile long tail;
+
+    // Main thread only: each button's state as of the last event queued. A
+    // release needs a free slot for every button still down, so presses are
+    // turned away before the queue gets that full.
+    private final boolean[] queuedDown = new boolean[2];
+    private int queuedDownCount;
+
+    // Render thread only.
+    private final boolean[] held = new boolean[2];
+    private final boolean[] active = new boolean[2];
+    private long oldestUnshownNanos;
+
+    public InputQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        times = new long[capacity];
+        buttons = new int[capacity];
+        pressed = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns false if the queue is too full and the press was dropped. A
+     * release is never dropped, or the button would stay held until the next
+     * touch; one that changes nothing is skipped.
+     */
+    public boolean offer(long timeNanos, int button, boolean down) {
+        if (down == queuedDown[button])
+            return true;
+        long t = tail;
+        long free = times.length - (t - head);
+        // Leave a slot for this press's release and every other held button's.
+        if (down && free < queuedDownCount + 2) {
+            return false;
+        }
+        queuedDown[button] = down;
+        queuedDownCount += down ? 1 : -1;
+        int slot = (int) (t & mask);
+        times[slot] = timeNanos;
+        buttons[slot] = button;
+        pressed[slot] = down;
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Applies every event up to the end of the tick ending at tickEndNanos. A
+     * button counts as down for the tick if it was down at any point in it, so a
+     * tap shorter than a tick still steers for one.
+     */
+    public void advanceTo(long tickEndNanos) {
+        active[LEFT] = held[LEFT];
+        active[RIGHT] = held[RIGHT];
+        long h = head;
+        long t = tail;
+        for (; h < t; h++) {
+            int slot = (int) (h & mask);
+            long time = times[slot];
+            if (time > tickEndNanos)
+                break;
+            int button = buttons[slot];
+            held[button] = pressed[slot];
+            if (pressed[slot]) {
+                active[button] = true;
+            }
+            if (oldestUnshownNanos == 0) {
+                oldestUnshownNanos = time;
+            }
+        }
+        head = h;
+    }
+
+    public boolean isTurningLeft() {
+        return active[LEFT];
+    }
+
+    public boolean isTurningRight() {
+        return active[RIGHT];
+    }
+
+    /**
+     * The touch time of the oldest event applied since the last call, or 0 if
+     * there wasn't one. Call once the frame showing those ticks is posted.
+     */
+    public long takeAppliedInputTime() {
+        long time = oldestUnshownNanos;
+        oldestUnshownNanos = 0;
+        return time;
+    }
+
+    /** Drops pending events and lets go of both buttons. Render thread only. */
+    public void clear() {
+        head = tail;
+        held[LEFT] = false;
+        held[RIGHT] = false;
+        active[LEFT] = false;
+        active[RIGHT] = false;
+        oldestUnshownNanos = 0;
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Fixed-size log-linear histogram of nanosecond durations. Every power of two
+ * is split into 32 linear buckets, so any recorded value is resolved to within
+ * about 3%, from single nanoseconds up to about 18 minutes, in under 10 KB.
+ *
+ * Recording never allocates. Only one thread should record into a histogram;
+ * other threads may read it for reporting and will see a slightly stale but
+ * usable picture. A requested reset reads as empty straight away, even before
+ * the recording thread gets round to clearing.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long max;
+    private long sum;
+    // Set by any thread, honoured by the recording thread before its next record.
+    private volatile boolean resetRequested;
+
+    public void record(long nanos) {
+        if (resetRequested) {
+            clear();
+        }
+        if (nanos < 0)
+            nanos = 0;
+        if (nanos > MAX_VALUE)
+            nanos = MAX_VALUE;
+        counts[bucketIndex(nanos)]++;
+        totalCount++;
+        sum += nanos;
+        if (nanos > max)
+            max = nanos;
+    }
+
+    /** Clears the histogram the next time the recording thread records into it. */
+    public void requestReset() {
+        resetRequested = true;
+    }
+
+    /** Clears immediately. Only call this from the recording thread. */
+    public void clear() {
+        resetRequested = false;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /** Midpoint of the range of values that land in the given bucket. */
+    static long bucketValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index - shift * SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+
+    /** Value at the given percentile (0-100], or 0 if nothing was recorded. */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0)
+            return 0;
+        long target = (long) Math.ceil(percentile / 100.0 * total);
+        if (target < 1)
+            target = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return resetRequested ? 0 : totalCount;
+    }
+
+    public long getMax() {
+        return resetRequested ? 0 : max;
+    }
+
+    public long getMean() {
+        long total = getCount();
+        return total == 0 ? 0 : sum / total;
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders each distinct note to 16-bit PCM once and hands out the same buffer
+ * on every later request. Entries are kept in least-recently-used order and
+ * evicted once the cache goes over its memory budget; a buffer someone still
+ * holds stays valid, it just isn't counted any more.
+ *
+ * Callers must treat returned buffers as read-only.
+ */
+public class NoteCache {
+
+    // Plain sine.
+    public static final int WAVE_SINE = 0;
+    // Sine clipped at +-0.8 for the retro game-over melody.
+    public static final int WAVE_CLIPPED_SINE = 1;
+
+    private final int sampleRate;
+    private final long budgetBytes;
+    private final WavetableOscillator oscillator;
+    private final LinkedHashMap<NoteKey, short[]> notes = new LinkedHashMap<>(32, 0.75f, true);
+    // Reused for lookups so a cache hit allocates nothing.
+    private final NoteKey probe = new NoteKey();
+    private long usedBytes;
+
+    public NoteCache(int sampleRate, long budgetBytes) {
+        this.sampleRate = sampleRate;
+        this.budgetBytes = budgetBytes;
+        this.oscillator = new WavetableOscillator(new Wavetable(Wavetable.SINE, sampleRate));
+    }
+
+    public synchronized short[] get(double frequency, int durationMs, int waveform, float gain) {
+        probe.set(frequency, durationMs, waveform, gain);
+        short[] buffer = notes.get(probe);
+        if (buffer != null) {
+            return buffer;
+        }
+
+        buffer = render(frequency, durationMs, waveform, gain);
+        NoteKey key = new NoteKey();
+        key.set(frequency, durationMs, waveform, gain);
+        notes.put(key, buffer);
+        usedBytes += buffer.length * 2L;
+        evictOverBudget(buffer);
+        return buffer;
+    }
+
+    private void evictOverBudget(short[] keep) {
+        Iterator<Map.Entry<NoteKey, short[]>> it = notes.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            short[] eldest = it.next().getValue();
+            if (eldest == keep)
+                break;
+            usedBytes -= eldest.length * 2L;
+            it.remove();
+        }
+    }
+
+    /** How many samples long a note of this duration is. */
+    static int sampleCount(int sampleRate, int durationMs) {
+        return (int) (sampleRate * (durationMs / 1000.0));
+    }
+
+    private short[] render(double frequency, int durationMs, int waveform, float gain) {
+        int numSamples = sampleCount(sampleRate, durationMs);
+        short[] buffer = new short[numSamples];
+
+        oscillator.setFrequency(frequency);
+        oscillator.resetPhase();
+        for (int i = 0; i < numSamples; i++) {
+            float sample = oscillator.nextSample();
+            if (waveform == WAVE_CLIPPED_SINE) {
+                if (sample > 0.8f)
+                    sample = 0.8f;
+                if (sample < -0.8f)
+                    sample = -0.8f;
+            }
+            buffer[i] = (short) (sample * Short.MAX_VALUE * gain);
+        }
+        return buffer;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return notes.size();
+    }
+
+    private static final class NoteKey {
+        private double frequency;
+        private int durationMs;
+        private int waveform;
+        private float gain;
+
+        void set(double frequency, int durationMs, int waveform, float gain) {
+            this.frequency = frequency;
+            this.durationMs = durationMs;
+            this.waveform = waveform;
+            this.gain = gain;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NoteKey))
+                return false;
+            NoteKey other = (NoteKey) o;
+            return Double.compare(frequency, other.frequency) == 0
+                    && durationMs == other.durationMs
+                    && waveform == other.waveform
+                    && Float.compare(gain, other.gain) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(frequency);
+            int result = (int) (bits ^ (bits >>> 32));
+            result = 31 * result + durationMs;
+            result = 31 * result + waveform;
+            result = 31 * result + Float.floatToIntBits(gain);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Fixed pool of obstacle slots, kept in primitive arrays and mirrored into a
+ * {@link CollisionGrid} under the same ids. Slots are handed out from a free
+ * list and go back on it when released, so a race can spawn and despawn
+ * obstacles forever without allocating.
+ *
+ * Positions are in road space, like the grid: x from the road's center line,
+ * y along the scrolled ground.
+ */
+public class ObstaclePool {
+
+    public static final int TYPE_CONE = 0;
+    // Three cones side by side across the road.
+    public static final int TYPE_CONE_ROW = 1;
+    public static final int CONES_PER_ROW = 3;
+
+    private final float[] x;
+    private final float[] y;
+    private final int[] type;
+    private final boolean[] active;
+    private final int[] freeSlots;
+    private int freeCount;
+    private final CollisionGrid grid;
+
+    private float coneHalfWidth;
+    private float coneHalfHeight;
+
+    public ObstaclePool(int capacity, float cellSize) {
+        x = new float[capacity];
+        y = new float[capacity];
+        type = new int[capacity];
+        active = new boolean[capacity];
+        freeSlots = new int[capacity];
+        grid = new CollisionGrid(capacity, cellSize);
+        clear();
+    }
+
+    public void setConeSize(float halfWidth, float halfHeight) {
+        this.coneHalfWidth = halfWidth;
+        this.coneHalfHeight = halfHeight;
+    }
+
+    /** Releases every obstacle. */
+    public void clear() {
+        grid.clear();
+        // Stack the free list so the lowest ids come out first.
+        freeCount = 0;
+        for (int i = active.length - 1; i >= 0; i--) {
+            active[i] = false;
+            freeSlots[freeCount++] = i;
+        }
+    }
+
+    /** Places an obstacle and returns its id, or -1 if every slot is in use. */
+    public int spawn(int obstacleType, float centerX, float centerY) {
+        if (freeCount == 0)
+            return -1;
+        int id = freeSlots[--freeCount];
+        x[id] = centerX;
+        y[id] = centerY;
+        type[id] = obstacleType;
+        active[id] = true;
+        grid.insert(id, centerX, centerY, getHalfWidth(obstacleType), getHalfHeight(obstacleType));
+        return id;
+    }
+
+    public void release(int id) {
+        if (!active[id])
+            return;
+        active[id] = false;
+        grid.remove(id);
+        freeSlots[freeCount++] = id;
+    }
+
+    /** Returns the id of an obstacle the box touches, or -1 if it's clear. */
+    public int findOverlap(OrientedBox box) {
+        return grid.findOverlap(box);
+    }
+
+    public int getCapacity() {
+        return active.length;
+    }
+
+    public int size() {
+        return active.length - freeCount;
+    }
+
+    public boolean isActive(int id) {
+        return active[id];
+    }
+
+    public float getX(int id) {
+        return x[id];
+    }
+
+    public float getY(int id) {
+        return y[id];
+    }
+
+    public int getType(int id) {
+        return type[id];
+    }
+
+    public float getHalfWidth(int obstacleType) {
+        return obstacleType == TYPE_CONE_ROW ? coneHalfWidth * CONES_PER_ROW : coneHalfWidth;
+    }
+
+    public float getHalfHeight(int obstacleType) {
+        return coneHalfHeight;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link AudioSink} that keeps everything written in memory instead of playing
+ * it. Writes never block, so an {@link AudioOutput} driving it renders as fast
+ * as the CPU allows. For golden-output tests, throughput numbers and listening
+ * to the DSP without a device; the result can be saved as a WAV file.
+ */
+public class OfflineAudioSink implements AudioSink {
+
+    private final int sampleRate;
+    private final int framesPerBurst;
+    private ByteBuffer pcm;
+
+    public OfflineAudioSink(int sampleRate, int framesPerBurst) {
+        this.sampleRate = sampleRate;
+        this.framesPerBurst = framesPerBurst;
+        pcm = ByteBuffer.allocate(sampleRate * 2).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Runs the output until the mixer has nothing left to play (or is silenced)
+     * or this holds at least maxFrames. Returns the frames held.
+     */
+    public int record(AudioOutput output, int maxFrames) {
+        while (getFrameCount() < maxFrames && output.update()) {
+            // Every update renders one burst straight into pcm.
+        }
+        return getFrameCount();
+    }
+
+    public int getFrameCount() {
+        return pcm.position() / 2;
+    }
+
+    /** Drops everything recorded so far. */
+    public void clear() {
+        pcm.clear();
+    }
+
+    /** The recorded samples as 16-bit little-endian mono PCM, read-only. */
+    public ByteBuffer getPcm() {
+        ByteBuffer view = pcm.duplicate();
+        view.flip();
+        return view.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Writes the recording as a canonical 44-byte-header WAV file. */
+    public void writeWav(OutputStream out) throws IOException {
+        int dataBytes = pcm.position();
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(36 + dataBytes);
+        header.put(new byte[] { 'W', 'A', 'V', 'E' });
+        header.put(new byte[] { 'f', 'm', 't', ' ' }).putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) 1); // mono
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * 2); // bytes per second
+        header.putShort((short) 2); // bytes per frame
+        header.putShort((short) 16);
+        header.put(new byte[] { 'd', 'a', 't', 'a' }).putInt(dataBytes);
+        out.write(header.array());
+        out.write(pcm.array(), pcm.arrayOffset(), dataBytes);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getFramesPerBurst() {
+        return framesPerBurst;
+    }
+
+    @Override
+    public int getBufferCapacityFrames() {
+        return framesPerBurst * AudioOutput.MAX_BURSTS;
+    }
+
+    @Override
+    public int setBufferSizeFrames(int frames) {
+        return frames;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return 0;
+    }
+
+    @Override
+    public void play() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void pause() {
+    }
+
+    @Override
+    public void flush() {
+        // Nothing is ever queued; written frames are already "played".
+    }
+
+    @Override
+    public int write(short[] buffer, int frames) {
+        if (pcm.remaining() < frames * 2) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pcm.capacity() * 2, pcm.position() + frames * 2))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            pcm.flip();
+            bigger.put(pcm);
+            pcm = bigger;
+        }
+        for (int i = 0; i < frames; i++) {
+            pcm.putShort(buffer[i]);
+        }
+        return frames;
+    }
+
+    @Override
+    public boolean getTimestamp(Timestamp out) {
+        // No hardware clock, so there's no latency to measure.
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * A rectangle rotated about its center, in screen-style coordinates (y grows
+ * downwards, positive angles turn clockwise, same as View.setRotation).
+ * Used for the car, whose sprite spins freely while steering.
+ */
+public class OrientedBox {
+
+    private float centerX;
+    private float centerY;
+    private float halfWidth;
+    private float halfHeight;
+    // Local x axis is (cos, sin), local y axis is (-sin, cos).
+    private float cos = 1f;
+    private float sin = 0f;
+
+    public void set(float centerX, float centerY, float halfWidth, float halfHeight, float rotationDegrees) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.halfWidth = halfWidth;
+        this.halfHeight = halfHeight;
+        double radians = StrictMath.toRadians(rotationDegrees);
+        this.cos = (float) StrictMath.cos(radians);
+        this.sin = (float) StrictMath.sin(radians);
+    }
+
+    public void translate(float dx, float dy) {
+        centerX += dx;
+        centerY += dy;
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    /** Half of the box's width once projected onto the screen's x axis. */
+    public float getExtentX() {
+        return Math.abs(cos) * halfWidth + Math.abs(sin) * halfHeight;
+    }
+
+    /** Half of the box's height once projected onto the screen's y axis. */
+    public float getExtentY() {
+        return Math.abs(sin) * halfWidth + Math.abs(cos) * halfHeight;
+    }
+
+    /** True if any part of the box is at or beyond either edge. */
+    public boolean crossesEdges(float leftEdge, float rightEdge) {
+        float extent = getExtentX();
+        return centerX - extent <= leftEdge || centerX + extent >= rightEdge;
+    }
+
+    /**
+     * Separating-axis test against an axis-aligned box. Only four axes can
+     * separate two rectangles: the screen's x and y axes and this box's own two.
+     */
+    public boolean overlaps(float x, float y, float otherHalfWidth, float otherHalfHeight) {
+        float dx = x - centerX;
+        float dy = y - centerY;
+
+        // Screen x and y axes.
+        if (Math.abs(dx) > getExtentX() + otherHalfWidth)
+            return false;
+        if (Math.abs(dy) > getExtentY() + otherHalfHeight)
+            return false;
+
+        // This box's local x axis.
+        float distance = Math.abs(dx * cos + dy * sin);
+        float otherRadius = otherHalfWidth * Math.abs(cos) + otherHalfHeight * Math.abs(sin);
+        if (distance > halfWidth + otherRadius)
+            return false;
+
+        // This box's local y axis.
+        distance = Math.abs(-dx * sin + dy * cos);
+        otherRadius = otherHalfWidth * Math.abs(sin) + otherHalfHeight * Math.abs(cos);
+        return distance <= halfHeight + otherRadius;
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * A phrase of music as data: notes with a pitch, a start time and a length,
+ * all in milliseconds from the start of the pattern, played with one waveform
+ * and gain. A {@link Sequencer} turns the times into sample frames and plays
+ * it inside the audio render loop.
+ */
+public final class Pattern {
+
+    final int waveform;
+    final float gain;
+    final boolean loop;
+    final int lengthMs;
+    final double[] frequencies;
+    final int[] startMs;
+    final int[] durationMs;
+
+    /**
+     * @param lengthMs where the pattern ends (or wraps, if it loops); notes still
+     *                 sounding then are cut off
+     */
+    public Pattern(int waveform, float gain, boolean loop, int lengthMs,
+                   double[] frequencies, int[] startMs, int[] durationMs) {
+        if (frequencies.length != startMs.length || frequencies.length != durationMs.length)
+            throw new IllegalArgumentException("Every note needs a frequency, start and duration");
+        for (int i = 0; i < startMs.length; i++) {
+            if (startMs[i] < 0 || startMs[i] >= lengthMs || durationMs[i] <= 0)
+                throw new IllegalArgumentException("Note " + i + " is outside the pattern");
+        }
+        this.waveform = waveform;
+        this.gain = gain;
+        this.loop = loop;
+        this.lengthMs = lengthMs;
+        this.frequencies = frequencies.clone();
+        this.startMs = startMs.clone();
+        this.durationMs = durationMs.clone();
+    }
+
+    /** Notes one after another, each followed by the same rest (which may be 0). */
+    public static Pattern phrase(int waveform, float gain, boolean loop, int restMs,
+                                 double[] frequencies, int[] durationMs) {
+        int[] startMs = new int[frequencies.length];
+        int time = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            startMs[i] = time;
+            time += durationMs[i] + restMs;
+        }
+        return new Pattern(waveform, gain, loop, time, frequencies, startMs, durationMs);
+    }
+
+    public int getNoteCount() {
+        return frequencies.length;
+    }
+
+    public int getLengthMs() {
+        return lengthMs;
+    }
+}
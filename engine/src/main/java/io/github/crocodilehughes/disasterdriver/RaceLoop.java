@@ -0,0 +1,53 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * One frame of the race: turns the frame's time into fixed steps and runs
+ * them, each with the touches that happened before it ends and the current
+ * tilt, recording every step's input in the {@link InputLog}. The activity and
+ * the allocation test both drive the race through this, so the test measures
+ * what actually runs. Render thread only.
+ */
+public class RaceLoop {
+
+    private final GameWorld world;
+    private final StepAccumulator accumulator;
+    private final InputQueue inputQueue;
+    private final InputLog inputLog;
+    // Null without tilt steering.
+    private final TiltFilter tiltFilter;
+
+    public RaceLoop(GameWorld world, StepAccumulator accumulator, InputQueue inputQueue, InputLog inputLog,
+            TiltFilter tiltFilter) {
+        this.world = world;
+        this.accumulator = accumulator;
+        this.inputQueue = inputQueue;
+        this.inputLog = inputLog;
+        this.tiltFilter = tiltFilter;
+    }
+
+    /**
+     * Runs as many steps as frameNanos covers, so the race plays at the same
+     * speed whatever the display's refresh rate; frameTimeNanos is when this
+     * frame's time ends. Stops at the step that crashes and returns true.
+     */
+    public boolean runFrame(long frameTimeNanos, long frameNanos) {
+        int steps = accumulator.advance(frameNanos);
+        long stepNanos = accumulator.getStepNanos();
+        // The simulation now reaches this frame's time less the carried-over remainder;
+        // each step takes the touches that happened before the moment it ends.
+        long stepEnd = frameTimeNanos - accumulator.getRemainderNanos() - (steps - 1) * stepNanos;
+        for (int i = 0; i < steps; i++, stepEnd += stepNanos) {
+            inputQueue.advanceTo(stepEnd);
+            boolean left = inputQueue.isTurningLeft();
+            boolean right = inputQueue.isTurningRight();
+            int tilt = tiltFilter != null ? tiltFilter.getTilt() : 0;
+            inputLog.record(world.getTick(), left, right, tilt);
+            world.setInput(left, right);
+            world.setTilt(tilt);
+            world.step();
+            if (world.isCrashed())
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.IOException;
+
+/**
+ * Plays an {@link InputLog} back through a fresh {@link GameWorld} as fast as
+ * the CPU allows, with no views, timers or audio involved.
+ */
+public final class RaceReplay {
+
+    private RaceReplay() {
+    }
+
+    /** Re-simulates the logged race up to its last tick (or its crash) and returns the world. */
+    public static GameWorld run(InputLog log) throws IOException {
+        GameWorld world = new GameWorld();
+        log.applySetup(world);
+        world.reset();
+
+        InputLog.Reader changes = log.reader();
+        int nextChange = changes.hasNext() ? changes.next() : Integer.MAX_VALUE;
+        boolean left = false;
+        boolean right = false;
+        int tilt = 0;
+        while (!world.isCrashed() && world.getTick() < log.getFinalTick()) {
+            if (world.getTick() == nextChange) {
+                left = changes.isTurningLeft();
+                right = changes.isTurningRight();
+                tilt = changes.getTilt();
+                nextChange = changes.hasNext() ? changes.next() : Integer.MAX_VALUE;
+            }
+            world.setInput(left, right);
+            world.setTilt(tilt);
+            world.step();
+        }
+        return world;
+    }
+
+    /** True if replaying the log ends on the same tick with the same score and outcome. */
+    public static boolean matches(InputLog log, GameWorld replayed) {
+        return replayed.getTick() == log.getFinalTick()
+                && replayed.getScore() == log.getFinalScore()
+                && replayed.isCrashed() == log.isCrashed();
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * The road ahead of the car as actual geometry: a ring buffer of segments,
+ * one per simulation tick of travel, each holding the road's center offset,
+ * scale and half-width. Segments are generated ahead of the car from the same
+ * two-octave noise the race has always used, so looking up the road at any
+ * distance in the window is a couple of array reads. Collision and obstacle
+ * placement read it at the car; the renderer reads it down the whole screen.
+ */
+public class RoadCourse {
+
+    // One segment per tick's worth of scrolling.
+    public static final float SEGMENT_LENGTH = GameWorld.ROAD_MOVE_SPEED * GameWorld.STEP_SECONDS;
+
+    private static final int CAPACITY = 512; // power of two
+    private static final int MASK = CAPACITY - 1;
+    // How far ahead of the car we keep generated; a bit over a landscape screen height.
+    private static final int LOOK_AHEAD_SEGMENTS = 160;
+
+    // (1 - cos(x * PI)) / 2 for x in [0, 1], with a guard entry for interpolation.
+    private static final int COS_TABLE_SIZE = 1024;
+    private static final float[] COS_WEIGHTS = new float[COS_TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= COS_TABLE_SIZE; i++) {
+            COS_WEIGHTS[i] = (1 - (float) StrictMath.cos(i * Math.PI / COS_TABLE_SIZE)) * 0.5f;
+        }
+    }
+
+    private final float[] centers = new float[CAPACITY];
+    private final float[] halfWidths = new float[CAPACITY];
+    private final float[] scales = new float[CAPACITY];
+
+    // Base Noise: Large, slow turns
+    private final NoiseChannel mainTurns = new NoiseChannel(0.2f);
+    // Detail Noise: Faster, smaller wiggles
+    private final NoiseChannel wiggles = new NoiseChannel(6.0f);
+
+    private float screenWidth;
+    private float roadWidth;
+    // Index of the next segment to generate; everything in [generated - CAPACITY, generated) is valid.
+    private int generated;
+    private float scale;
+
+    public void setTrack(float screenWidth, float roadWidth) {
+        this.screenWidth = screenWidth;
+        this.roadWidth = roadWidth;
+        reset();
+    }
+
+    public void reset() {
+        generated = 0;
+        scale = 1f;
+        mainTurns.reset();
+        wiggles.reset();
+    }
+
+    /** Makes sure segments exist from the given distance up to the look-ahead window. */
+    public void advanceTo(float distance) {
+        int target = segmentIndex(distance) + LOOK_AHEAD_SEGMENTS;
+        while (generated <= target) {
+            generateSegment(generated);
+            generated++;
+        }
+    }
+
+    private void generateSegment(int index) {
+        int slot = index & MASK;
+        float time = index * GameWorld.STEP_SECONDS;
+
+        // noise outputs -1 to 1 approximately (based on the hash func).
+        // mainTurns drives the big curves (screen width / 3.5)
+        // wiggles drives the jitter (screen width / 25)
+        centers[slot] = (mainTurns.sample(time) * (screenWidth / 3.5f)) + (wiggles.sample(time) * (screenWidth / 25f));
+
+        // Road Shrinking Logic
+        if (index > 0 && scale > GameWorld.MIN_ROAD_SCALE) {
+            scale -= GameWorld.ROAD_SHRINK_RATE * GameWorld.STEP_SECONDS;
+        }
+        scales[slot] = scale;
+        halfWidths[slot] = roadWidth * scale / 2;
+    }
+
+    private static int segmentIndex(float distance) {
+        return (int) (distance / SEGMENT_LENGTH);
+    }
+
+    private float lookup(float[] values, float distance) {
+        float position = distance / SEGMENT_LENGTH;
+        int index = (int) position;
+        int newest = generated - 1;
+        int oldest = generated - CAPACITY;
+        if (index >= newest) {
+            return values[newest & MASK];
+        }
+        if (index < oldest) {
+            index = oldest;
+            position = oldest;
+        }
+        float fraction = position - index;
+        float a = values[index & MASK];
+        float b = values[(index + 1) & MASK];
+        return a + (b - a) * fraction;
+    }
+
+    public float getCenter(float distance) {
+        return lookup(centers, distance);
+    }
+
+    public float getHalfWidth(float distance) {
+        return lookup(halfWidths, distance);
+    }
+
+    public float getScale(float distance) {
+        return lookup(scales, distance);
+    }
+
+    static float getPseudoRandom(int x) {
+        x = (x << 13) ^ x;
+        return (float) (1.0 - ((x * (x * x * 15731 + 789221) + 1376312589) & 0x7fffffff) / 1073741824.0);
+    }
+
+    static float cosineInterpolate(float a, float b, float x) {
+        float position = x * COS_TABLE_SIZE;
+        int index = (int) position;
+        float w0 = COS_WEIGHTS[index];
+        float f = w0 + (COS_WEIGHTS[index + 1] - w0) * (position - index);
+        return a * (1 - f) + b * f;
+    }
+
+    /**
+     * One octave of value noise. Keeps the two lattice values around so the
+     * hash only runs when we cross into the next lattice cell.
+     */
+    private static final class NoiseChannel {
+        private final float frequency;
+        private int cell;
+        private float v1;
+        private float v2;
+
+        NoiseChannel(float frequency) {
+            this.frequency = frequency;
+            reset();
+        }
+
+        void reset() {
+            cell = Integer.MIN_VALUE;
+        }
+
+        float sample(float time) {
+            float x = time * frequency;
+            int intX = (int) Math.floor(x);
+            if (intX != cell) {
+                if (intX == cell + 1) {
+                    v1 = v2;
+                } else {
+                    v1 = getPseudoRandom(intX);
+                }
+                v2 = getPseudoRandom(intX + 1);
+                cell = intX;
+            }
+            return cosineInterpolate(v1, v2, x - intX);
+        }
+    }
+}
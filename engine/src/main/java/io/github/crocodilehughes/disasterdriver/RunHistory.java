@@ -0,0 +1,358 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Every finished race, kept in an append-only file of fixed-size records, plus
+ * an in-memory index of the best few. All file access happens on one
+ * background thread: the file is read once at startup, and appended runs are
+ * written in batches with a single fsync per batch. Callers only ever touch
+ * memory, so asking for the high score is free on any thread.
+ */
+public class RunHistory {
+
+    public interface Listener {
+        void onLoaded(RunHistory history);
+    }
+
+    /**
+     * Where the history lives and the best score from before it existed. Asked
+     * on the background thread, since finding either may touch the disk.
+     */
+    public interface Source {
+        File getFile();
+
+        long getLegacyBestScore();
+    }
+
+    private static final Logger LOG = Logger.getLogger("RunHistory");
+    private static final int MAGIC = 0x44445248; // "DDRH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 32;
+    // Runs appended within this window share one write and one fsync.
+    static final long BATCH_DELAY_MS = 200;
+    private static final String TRACE_WRITE = "runHistory.write";
+
+    private final Source source;
+    private final ScheduledExecutorService writer;
+    // Writer thread only, from load() on.
+    private File file;
+    // Cleared if an unreadable file couldn't be moved out of the way.
+    private boolean writable = true;
+
+    // Guarded by this.
+    private final RunRecord[] top;
+    private int topCount;
+    private int runCount;
+    private long legacyBestScore;
+    private boolean loaded;
+    private final List<Listener> listeners = new ArrayList<>();
+    private final List<Executor> listenerExecutors = new ArrayList<>();
+    private final List<RunRecord> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    private int syncCount;
+
+    public RunHistory(final File file, int topSize) {
+        this(new Source() {
+            @Override
+            public File getFile() {
+                return file;
+            }
+
+            @Override
+            public long getLegacyBestScore() {
+                return 0;
+            }
+        }, topSize);
+    }
+
+    public RunHistory(Source source, int topSize) {
+        this.source = source;
+        this.top = new RunRecord[topSize];
+        writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "RunHistory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Reads the file in the background. A best score kept from before there was
+     * a history (the old HIGH_SCORE preference) still counts as the high score.
+     */
+    public void load(final long legacyBestScore) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                readFile(source.getFile(), legacyBestScore);
+            }
+        });
+    }
+
+    /** Like {@link #load(long)}, with the legacy best score from the {@link Source}. */
+    public void load() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                readFile(source.getFile(), source.getLegacyBestScore());
+            }
+        });
+    }
+
+    /** Calls back on the given executor once loaded, straight away if it already is. */
+    public void whenLoaded(Executor executor, final Listener listener) {
+        synchronized (this) {
+            if (!loaded) {
+                listeners.add(listener);
+                listenerExecutors.add(executor);
+                return;
+            }
+        }
+        notify(executor, listener);
+    }
+
+    private void notify(Executor executor, final Listener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onLoaded(RunHistory.this);
+            }
+        });
+    }
+
+    /** Records a finished race. Memory is updated now; the file soon after. */
+    public void append(RunRecord run) {
+        synchronized (this) {
+            addToIndex(run);
+            runCount++;
+            pending.add(run);
+            if (flushScheduled)
+                return;
+            flushScheduled = true;
+        }
+        writer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+            }
+        }, BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes anything still pending and waits for it to reach the disk. */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized long getBestScore() {
+        long best = topCount > 0 ? top[0].score : 0;
+        return Math.max(best, legacyBestScore);
+    }
+
+    /** The best runs, highest score first. */
+    public synchronized List<RunRecord> getTopRuns() {
+        List<RunRecord> runs = new ArrayList<>(topCount);
+        for (int i = 0; i < topCount; i++) {
+            runs.add(top[i]);
+        }
+        return runs;
+    }
+
+    public synchronized int getRunCount() {
+        return runCount;
+    }
+
+    synchronized int getSyncCount() {
+        return syncCount;
+    }
+
+    // Keeps top[] sorted by score, best first; ties go to the earlier run.
+    private void addToIndex(RunRecord run) {
+        int position = topCount;
+        while (position > 0 && top[position - 1].score < run.score) {
+            position--;
+        }
+        if (position >= top.length)
+            return;
+        int last = Math.min(topCount, top.length - 1);
+        System.arraycopy(top, position, top, position + 1, last - position);
+        top[position] = run;
+        if (topCount < top.length)
+            topCount++;
+    }
+
+    private void readFile(File file, long legacyBest) {
+        this.file = file;
+        List<RunRecord> runs = new ArrayList<>();
+        if (file.exists()) {
+            try {
+                readRuns(file, runs);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not read run history", e);
+            }
+        }
+
+        List<Listener> toNotify;
+        List<Executor> executors;
+        synchronized (this) {
+            legacyBestScore = legacyBest;
+            for (RunRecord run : runs) {
+                addToIndex(run);
+            }
+            runCount += runs.size();
+            loaded = true;
+            toNotify = new ArrayList<>(listeners);
+            executors = new ArrayList<>(listenerExecutors);
+            listeners.clear();
+            listenerExecutors.clear();
+        }
+        for (int i = 0; i < toNotify.size(); i++) {
+            notify(executors.get(i), toNotify.get(i));
+        }
+    }
+
+    /**
+     * Reads every whole record. Opens the file read-only and only writes to it
+     * to repair it: a record cut short by the process dying is dropped so later
+     * appends stay aligned. A file this version can't read, say one from a
+     * newer version before a downgrade, is moved aside rather than lost.
+     */
+    private void readRuns(File file, List<RunRecord> runs) throws IOException {
+        long repairedLength = -1;
+        boolean unreadable = false;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length < HEADER_SIZE) {
+                // Died writing the header of a new file; there's nothing in it.
+                repairedLength = length == 0 ? -1 : 0;
+            } else if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                long whole = (length - HEADER_SIZE) / RECORD_SIZE;
+                ByteBuffer buffer = ByteBuffer.allocate((int) (whole * RECORD_SIZE));
+                FileChannel channel = in.getChannel();
+                // A read may return fewer bytes than asked for; keep going until full or EOF.
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, HEADER_SIZE + buffer.position()) < 0)
+                        break;
+                }
+                buffer.flip();
+                whole = buffer.remaining() / RECORD_SIZE;
+                for (long i = 0; i < whole; i++) {
+                    runs.add(readRecord(buffer));
+                }
+                long expected = HEADER_SIZE + whole * RECORD_SIZE;
+                if (length != expected) {
+                    repairedLength = expected;
+                }
+            } else {
+                unreadable = true;
+            }
+        }
+
+        if (repairedLength >= 0) {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(repairedLength);
+            }
+        }
+        if (unreadable) {
+            File aside = new File(file.getPath() + ".unreadable-" + System.currentTimeMillis());
+            if (file.renameTo(aside)) {
+                LOG.warning("Unrecognised run history, moved it to " + aside.getName() + " and starting a new one");
+            } else {
+                LOG.warning("Unrecognised run history that can't be moved; not recording runs");
+                writable = false;
+            }
+        }
+    }
+
+    private void writePending() {
+        List<RunRecord> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty())
+                return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        if (!writable)
+            return;
+        if (file == null) {
+            file = source.getFile();
+        }
+
+        boolean fresh = !file.exists() || file.length() == 0;
+        ByteBuffer buffer = ByteBuffer.allocate((fresh ? HEADER_SIZE : 0) + batch.size() * RECORD_SIZE);
+        if (fresh) {
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+        for (RunRecord run : batch) {
+            writeRecord(buffer, run);
+        }
+        buffer.flip();
+
+        Tracer.begin(TRACE_WRITE);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+            synchronized (this) {
+                syncCount++;
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not write run history", e);
+        } finally {
+            Tracer.end();
+        }
+    }
+
+    private static void writeRecord(ByteBuffer out, RunRecord run) {
+        out.putLong(run.timestampMillis);
+        out.putLong(run.score);
+        out.putInt(run.durationMillis);
+        out.putInt(run.carColor);
+        out.putInt(run.decalColor);
+        out.putInt(run.decalEnabled ? 1 : 0);
+    }
+
+    private static RunRecord readRecord(ByteBuffer in) {
+        long timestamp = in.getLong();
+        long score = in.getLong();
+        int duration = in.getInt();
+        int carColor = in.getInt();
+        int decalColor = in.getInt();
+        boolean decalEnabled = (in.getInt() & 1) != 0;
+        return new RunRecord(timestamp, score, duration, carColor, decalEnabled, decalColor);
+    }
+}
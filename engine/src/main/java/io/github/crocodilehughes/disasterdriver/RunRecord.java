@@ -0,0 +1,22 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/** One finished race, as kept in {@link RunHistory}. */
+public final class RunRecord {
+
+    public final long timestampMillis;
+    public final long score;
+    public final int durationMillis;
+    public final int carColor;
+    public final boolean decalEnabled;
+    public final int decalColor;
+
+    public RunRecord(long timestampMillis, long score, int durationMillis,
+                     int carColor, boolean decalEnabled, int decalColor) {
+        this.timestampMillis = timestampMillis;
+        this.score = score;
+        this.durationMillis = durationMillis;
+        this.carColor = carColor;
+        this.decalEnabled = decalEnabled;
+        this.decalColor = decalColor;
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Rectangles that scroll down the screen with the road: lane dashes, roadside
+ * markers, background strips. Elements live in primitive arrays sorted by y,
+ * in layer space (where they'd be on screen with nothing scrolled yet). A
+ * layer can repeat every {@link #setPeriod period} pixels and can scroll at
+ * its own {@link #setParallax rate}, including backwards.
+ *
+ * Each frame {@link #update} finds just the elements on screen with a binary
+ * search, so its cost follows what's visible rather than how many elements
+ * there are, and it never allocates. Render thread only.
+ */
+public class ScrollingLayer {
+
+    private final float[] x;
+    private final float[] y;
+    private final float[] width;
+    private final float[] height;
+    private final int[] kind;
+    private int count;
+    private float maxHeight;
+    private float period;
+    private float parallax = 1f;
+
+    // Screen positions of what's visible, filled in by update().
+    private final int[] visibleElement;
+    private final float[] visibleTop;
+    private int visibleCount;
+    private int scanned;
+
+    /**
+     * @param maxVisible the most instances update() will report; anything past
+     *                   that is left undrawn rather than growing the arrays
+     */
+    public ScrollingLayer(int capacity, int maxVisible) {
+        x = new float[capacity];
+        y = new float[capacity];
+        width = new float[capacity];
+        height = new float[capacity];
+        kind = new int[capacity];
+        visibleElement = new int[maxVisible];
+        visibleTop = new float[maxVisible];
+    }
+
+    /** Repeats the elements every this many pixels; 0 (the default) places them once. */
+    public void setPeriod(float period) {
+        if (period < 0)
+            throw new IllegalArgumentException("period " + period);
+        this.period = period;
+    }
+
+    public float getPeriod() {
+        return period;
+    }
+
+    /**
+     * How far this layer moves per pixel the road scrolls: 1 moves with the road,
+     * less for things further away, negative to run against it.
+     */
+    public void setParallax(float parallax) {
+        this.parallax = parallax;
+    }
+
+    public void clear() {
+        count = 0;
+        maxHeight = 0;
+        visibleCount = 0;
+    }
+
+    /**
+     * Adds an element, keeping them sorted by y. With a period set, y must be
+     * within [0, period). Returns false if the layer is full.
+     */
+    public boolean add(float left, float top, float w, float h, int elementKind) {
+        if (period > 0 && (top < 0 || top >= period))
+            throw new IllegalArgumentException("y " + top + " outside period " + period);
+        if (count == x.length)
+            return false;
+        int i = count;
+        while (i > 0 && y[i - 1] > top) {
+            x[i] = x[i - 1];
+            y[i] = y[i - 1];
+            width[i] = width[i - 1];
+            height[i] = height[i - 1];
+            kind[i] = kind[i - 1];
+            i--;
+        }
+        x[i] = left;
+        y[i] = top;
+        width[i] = w;
+        height[i] = h;
+        kind[i] = elementKind;
+        count++;
+        maxHeight = Math.max(maxHeight, h);
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Works out which elements overlap the screen (0 to viewHeight) when the road
+     * has scrolled down by roadScroll; read them back with the getVisible* methods.
+     */
+    public void update(float roadScroll, float viewHeight) {
+        visibleCount = 0;
+        scanned = 0;
+        if (count == 0)
+            return;
+        double offset = (double) roadScroll * parallax;
+        // An element is on screen when y + offset is in (-height, viewHeight).
+        double from = -offset - maxHeight;
+        double to = viewHeight - offset;
+        if (period <= 0) {
+            collect(from, to, offset);
+            return;
+        }
+        // Each repetition that overlaps the window; usually one or two.
+        for (double base = Math.floor(from / period) * period; base < to; base += period) {
+            collect(from - base, to - base, base + offset);
+        }
+    }
+
+    // Adds the elements with y in [from, to), shifted onto the screen by shift.
+    private void collect(double from, double to, double shift) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (y[mid] < from) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < count && y[i] < to; i++) {
+            scanned++;
+            double top = y[i] + shift;
+            if (top + height[i] <= 0)
+                continue;
+            if (visibleCount == visibleElement.length)
+                return;
+            visibleElement[visibleCount] = i;
+            visibleTop[visibleCount] = (float) top;
+            visibleCount++;
+        }
+    }
+
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /** Screen x of the element's left edge, before any horizontal offset the caller adds. */
+    public float getVisibleLeft(int index) {
+        return x[visibleElement[index]];
+    }
+
+    public float getVisibleTop(int index) {
+        return visibleTop[index];
+    }
+
+    public float getVisibleWidth(int index) {
+        return width[visibleElement[index]];
+    }
+
+    public float getVisibleHeight(int index) {
+        return height[visibleElement[index]];
+    }
+
+    public int getVisibleKind(int index) {
+        return kind[visibleElement[index]];
+    }
+
+    /** Elements looked at by the last update(), for checking it stays proportional to what's visible. */
+    int getScannedCount() {
+        return scanned;
+    }
+}
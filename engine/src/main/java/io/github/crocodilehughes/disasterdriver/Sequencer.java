@@ -0,0 +1,134 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.util.Arrays;
+
+/**
+ * A voice that plays {@link Pattern}s inside the audio render loop. Every note
+ * starts and stops on an exact sample frame counted from the start of the
+ * pattern, however the render thread happens to be scheduled and however big
+ * the blocks it asks for are. Render thread only.
+ *
+ * Note buffers are fetched from the {@link NoteCache} at note-on and let go at
+ * note-off, so the cache is free to evict the notes of a pattern that isn't
+ * playing.
+ */
+public class Sequencer {
+
+    /** A pattern prepared for one sample rate: times in frames, notes looked up as they play. */
+    public static final class Sequence {
+        final Pattern pattern;
+        final NoteCache noteCache;
+        final int[] startFrames;
+        final int[] noteFrames;
+        final int lengthFrames;
+        final boolean loop;
+
+        /** Renders the notes into the cache now so the first play doesn't have to. */
+        public Sequence(Pattern pattern, int sampleRate, NoteCache noteCache) {
+            this.pattern = pattern;
+            this.noteCache = noteCache;
+            int count = pattern.getNoteCount();
+            startFrames = new int[count];
+            noteFrames = new int[count];
+            for (int i = 0; i < count; i++) {
+                note(i);
+                startFrames[i] = toFrames(pattern.startMs[i], sampleRate);
+                noteFrames[i] = NoteCache.sampleCount(sampleRate, pattern.durationMs[i]);
+            }
+            lengthFrames = toFrames(pattern.lengthMs, sampleRate);
+            loop = pattern.loop;
+        }
+
+        short[] note(int index) {
+            return noteCache.get(pattern.frequencies[index], pattern.durationMs[index],
+                    pattern.waveform, pattern.gain);
+        }
+
+        private static int toFrames(int ms, int sampleRate) {
+            return (int) ((long) ms * sampleRate / 1000);
+        }
+
+        public int getLengthFrames() {
+            return lengthFrames;
+        }
+    }
+
+    private Sequence sequence;
+    // The buffers of the notes sounding right now, by note index; null otherwise.
+    private short[][] sounding = new short[0][];
+    private int position;
+    private boolean active;
+
+    public void start(Sequence sequence) {
+        this.sequence = sequence;
+        int count = sequence.startFrames.length;
+        if (sounding.length < count) {
+            sounding = new short[count][];
+        }
+        Arrays.fill(sounding, null);
+        position = 0;
+        active = true;
+    }
+
+    public void stop() {
+        active = false;
+        Arrays.fill(sounding, null);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /** Frames into the current pattern. */
+    public int getPosition() {
+        return position;
+    }
+
+    /** Adds the next frames of the pattern into mix; a pattern that ends mid-block leaves the rest alone. */
+    public void render(int[] mix, int frames) {
+        int done = 0;
+        while (done < frames && active) {
+            // Up to the end of the block or the pattern, whichever comes first.
+            int count = Math.min(frames - done, sequence.lengthFrames - position);
+            mixNotes(mix, done, count);
+            position += count;
+            done += count;
+            if (position == sequence.lengthFrames) {
+                if (sequence.loop) {
+                    position = 0;
+                } else {
+                    stop();
+                }
+            }
+        }
+    }
+
+    // Every note overlapping [position, position + count) adds its overlapping part,
+    // so notes can overlap each other and land anywhere inside a block.
+    private void mixNotes(int[] mix, int offset, int count) {
+        int end = position + count;
+        int[] starts = sequence.startFrames;
+        int[] lengths = sequence.noteFrames;
+        for (int n = 0; n < starts.length; n++) {
+            int noteOn = starts[n];
+            int noteOff = noteOn + lengths[n];
+            int from = Math.max(noteOn, position);
+            int to = Math.min(noteOff, end);
+            if (from >= to)
+                continue;
+            short[] note = sounding[n];
+            if (note == null) {
+                // Almost always a hit: the Sequence rendered it up front.
+                note = sequence.note(n);
+                sounding[n] = note;
+            }
+            int out = offset + from - position;
+            for (int frame = from; frame < to; frame++) {
+                mix[out++] += note[frame - noteOn];
+            }
+            if (to == noteOff) {
+                sounding[n] = null;
+            }
+        }
+    }
+}
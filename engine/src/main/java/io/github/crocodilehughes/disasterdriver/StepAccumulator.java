@@ -0,0 +1,52 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Turns variable frame times into a whole number of fixed simulation steps,
+ * carrying the remainder over to the next frame. The remainder is exposed as
+ * an interpolation factor for rendering between the last two steps.
+ */
+public class StepAccumulator {
+
+    private final long stepNanos;
+    private final int maxStepsPerFrame;
+    private long accumulatedNanos;
+
+    public StepAccumulator(int stepsPerSecond, int maxStepsPerFrame) {
+        this.stepNanos = 1_000_000_000L / stepsPerSecond;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Adds a frame's worth of time and returns how many steps to run now.
+     * After a long stall (e.g. the app was paused) the backlog is dropped
+     * rather than fast-forwarding the race.
+     */
+    public int advance(long frameNanos) {
+        accumulatedNanos += frameNanos;
+        int steps = (int) (accumulatedNanos / stepNanos);
+        if (steps > maxStepsPerFrame) {
+            steps = maxStepsPerFrame;
+            accumulatedNanos = 0;
+            return steps;
+        }
+        accumulatedNanos -= steps * stepNanos;
+        return steps;
+    }
+
+    public float getAlpha() {
+        return (float) accumulatedNanos / stepNanos;
+    }
+
+    /** Time carried over to the next frame, not yet simulated. */
+    public long getRemainderNanos() {
+        return accumulatedNanos;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public void reset() {
+        accumulatedNanos = 0;
+    }
+}
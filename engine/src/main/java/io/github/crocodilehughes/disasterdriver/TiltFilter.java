@@ -0,0 +1,115 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Turns raw gyroscope and accelerometer samples into a steering amount for
+ * {@link GameWorld#setTilt}. The angle is how far the phone is turned like a
+ * steering wheel, in the plane of the screen: clockwise (right edge down) is
+ * positive.
+ *
+ * A complementary filter: the gyroscope's rate is integrated for a fast, smooth
+ * angle, and pulled towards the angle gravity gives over about
+ * {@link #TIME_CONSTANT_SECONDS} so gyro drift doesn't build up. Without a
+ * gyroscope the same pull makes it a plain low-pass filter on the
+ * accelerometer.
+ *
+ * Samples come in on the sensor thread; the latest steering amount is published
+ * through a single volatile slot that the race tick reads without locking.
+ */
+public class TiltFilter {
+
+    static final float TIME_CONSTANT_SECONDS = 0.25f;
+    // No steering inside the dead zone; full lock from FULL_TILT_DEGREES on.
+    static final float DEAD_ZONE_DEGREES = 4f;
+    static final float FULL_TILT_DEGREES = 30f;
+    // With less gravity than this in the screen's plane (phone lying flat) the angle means nothing.
+    private static final float MIN_IN_PLANE_GRAVITY = 0.3f * 9.81f;
+    // Longer gaps than this (sensor paused, thread descheduled) aren't integrated.
+    private static final long MAX_STEP_NANOS = 100_000_000L;
+
+    // Sensor thread only.
+    private double angle;
+    private long lastGyroNanos;
+    private long lastGravityNanos;
+    private boolean hasAngle;
+
+    // The slot: written by the sensor thread, read by the render thread.
+    private volatile int tilt;
+
+    /**
+     * Takes an accelerometer reading (m/s^2) along the screen's x (right) and y
+     * (up) axes, already remapped for the display rotation. Held upright and
+     * still, y reads +9.81.
+     */
+    public void onAccelerometer(long timeNanos, float x, float y) {
+        if (Math.hypot(x, y) < MIN_IN_PLANE_GRAVITY) {
+            lastGravityNanos = 0;
+            return;
+        }
+        // Turning clockwise tips the screen's x axis down, so the reading along x goes negative.
+        double measured = Math.atan2(-x, y);
+        if (!hasAngle) {
+            angle = measured;
+            hasAngle = true;
+        } else if (lastGravityNanos != 0) {
+            long step = timeNanos - lastGravityNanos;
+            if (step > 0 && step <= MAX_STEP_NANOS) {
+                double dt = step / 1e9;
+                double pull = dt / (TIME_CONSTANT_SECONDS + dt);
+                angle = wrap(angle + pull * wrap(measured - angle));
+            }
+        }
+        lastGravityNanos = timeNanos;
+        publish();
+    }
+
+    /** @param zRate rotation about the axis out of the screen, rad/s, counter-clockwise positive */
+    public void onGyroscope(long timeNanos, float zRate) {
+        if (hasAngle && lastGyroNanos != 0) {
+            long step = timeNanos - lastGyroNanos;
+            if (step > 0 && step <= MAX_STEP_NANOS) {
+                angle = wrap(angle - zRate * (step / 1e9));
+            }
+        }
+        lastGyroNanos = timeNanos;
+        publish();
+    }
+
+    /** Forgets the angle; the next accelerometer sample starts it again. Sensor thread only. */
+    public void reset() {
+        angle = 0;
+        lastGyroNanos = 0;
+        lastGravityNanos = 0;
+        hasAngle = false;
+        tilt = 0;
+    }
+
+    /** The filtered angle in degrees, clockwise positive. Sensor thread only. */
+    public double getAngleDegrees() {
+        return Math.toDegrees(angle);
+    }
+
+    /** The latest steering amount, -TILT_FULL_SCALE to TILT_FULL_SCALE. Any thread. */
+    public int getTilt() {
+        return tilt;
+    }
+
+    private void publish() {
+        tilt = toTilt(Math.toDegrees(angle));
+    }
+
+    static int toTilt(double degrees) {
+        double amount = (Math.abs(degrees) - DEAD_ZONE_DEGREES) / (FULL_TILT_DEGREES - DEAD_ZONE_DEGREES);
+        if (amount <= 0)
+            return 0;
+        int steps = (int) Math.round(Math.min(amount, 1) * GameWorld.TILT_FULL_SCALE);
+        return degrees < 0 ? -steps : steps;
+    }
+
+    private static double wrap(double radians) {
+        if (radians > Math.PI)
+            return radians - 2 * Math.PI;
+        if (radians < -Math.PI)
+            return radians + 2 * Math.PI;
+        return radians;
+    }
+}
@@ -0,0 +1,296 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process tracing: begin/end sections and counters, each stamped with
+ * System.nanoTime() into a preallocated ring for the calling thread, and
+ * exportable as Chrome trace JSON (chrome://tracing, ui.perfetto.dev).
+ *
+ * Recording only happens while enabled, so it can be switched on for a sample
+ * of races in release builds; when off a call costs one volatile read. Every
+ * call is also passed to the {@link Mirror}, if there is one, so the same
+ * sections show up in system traces. Names must be constants: they are kept
+ * by reference and nothing is allocated per event, only a ring the first time
+ * a thread records.
+ */
+public final class Tracer {
+
+    /** Forwards sections to a platform tracer such as android.os.Trace. */
+    public interface Mirror {
+        void beginSection(String name);
+
+        void endSection();
+
+        void setCounter(String name, long value);
+    }
+
+    // Events per thread unless it asks for more; a power of two. The oldest are overwritten first.
+    static final int RING_CAPACITY = 8192;
+    // Past this many rings, those of threads that have exited are dropped before the next export.
+    static final int MAX_RINGS = 32;
+
+    private static final byte BEGIN = 0;
+    private static final byte END = 1;
+    private static final byte COUNTER = 2;
+
+    private static volatile boolean enabled;
+    private static volatile Mirror mirror;
+
+    private static final List<Ring> rings = new ArrayList<>(); // guarded by itself
+    private static final ThreadLocal<Ring> threadRing = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> threadCapacity = new ThreadLocal<>();
+
+    private Tracer() {
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setMirror(Mirror newMirror) {
+        mirror = newMirror;
+    }
+
+    /**
+     * Gives the calling thread a ring of this many events (a power of two)
+     * instead of {@link #RING_CAPACITY}, for threads that record far more than
+     * the rest, like the audio thread once per burst. Call before the thread's
+     * first event; nothing is allocated until then.
+     */
+    public static void setThreadCapacity(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        threadCapacity.set(capacity);
+    }
+
+    /**
+     * The calling thread is done recording, e.g. as it exits. Its events are
+     * still in the next export, after which its ring is dropped.
+     */
+    public static void releaseThread() {
+        Ring ring = threadRing.get();
+        if (ring != null) {
+            ring.released = true;
+            threadRing.remove();
+        }
+        threadCapacity.remove();
+    }
+
+    public static void begin(String name) {
+        if (enabled) {
+            ring().add(BEGIN, name, 0);
+        }
+        Mirror m = mirror;
+        if (m != null) {
+            m.beginSection(name);
+        }
+    }
+
+    /** Ends the innermost section begun on this thread. */
+    public static void end() {
+        if (enabled) {
+            ring().add(END, null, 0);
+        }
+        Mirror m = mirror;
+        if (m != null) {
+            m.endSection();
+        }
+    }
+
+    public static void counter(String name, long value) {
+        if (enabled) {
+            ring().add(COUNTER, name, value);
+        }
+        Mirror m = mirror;
+        if (m != null) {
+            m.setCounter(name, value);
+        }
+    }
+
+    private static Ring ring() {
+        Ring ring = threadRing.get();
+        if (ring == null) {
+            Integer capacity = threadCapacity.get();
+            ring = new Ring(Thread.currentThread(), capacity != null ? capacity : RING_CAPACITY);
+            synchronized (rings) {
+                if (rings.size() >= MAX_RINGS) {
+                    dropFinished();
+                }
+                rings.add(ring);
+            }
+            threadRing.set(ring);
+        }
+        return ring;
+    }
+
+    // Guarded by rings.
+    private static void dropFinished() {
+        for (int i = rings.size() - 1; i >= 0; i--) {
+            if (rings.get(i).isFinished()) {
+                rings.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Writes every event recorded since sinceNanos (a System.nanoTime() value)
+     * as a Chrome trace JSON object, then drops the rings of threads that have
+     * exited. Safe while other threads keep recording, though events a thread
+     * writes during the export may be missing or, if it laps its whole ring
+     * meanwhile, from later than they look.
+     *
+     * Each thread only keeps its newest events: {@link #RING_CAPACITY}, or what
+     * it asked for with {@link #setThreadCapacity}. A thread that records faster
+     * than that over the traced span loses the start of it.
+     */
+    public static void writeChromeJson(Writer out, long sinceNanos) throws IOException {
+        List<Ring> snapshot;
+        synchronized (rings) {
+            snapshot = new ArrayList<>(rings);
+        }
+        StringBuilder json = new StringBuilder(64 * 1024);
+        json.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Ring ring : snapshot) {
+            first = ring.appendEvents(json, sinceNanos, first);
+            if (json.length() > 60 * 1024) {
+                out.append(json);
+                json.setLength(0);
+            }
+        }
+        json.append("]}\n");
+        out.append(json);
+        out.flush();
+        synchronized (rings) {
+            dropFinished();
+        }
+    }
+
+    static final class Ring {
+        private final long threadId;
+        private final String threadName;
+        // Weak so a thread that exits without releasing its ring can still be collected.
+        private final WeakReference<Thread> owner;
+        private final int mask;
+        private final long[] times;
+        private final long[] values;
+        private final String[] names;
+        private final byte[] types;
+        // Events ever written; published after the event itself so readers see it whole.
+        private volatile long count;
+        volatile boolean released;
+
+        Ring(Thread thread, int capacity) {
+            threadId = thread.getId();
+            threadName = thread.getName();
+            owner = new WeakReference<>(thread);
+            mask = capacity - 1;
+            times = new long[capacity];
+            values = new long[capacity];
+            names = new String[capacity];
+            types = new byte[capacity];
+        }
+
+        boolean isFinished() {
+            Thread thread = owner.get();
+            return released || thread == null || !thread.isAlive();
+        }
+
+        void add(byte type, String name, long value) {
+            long n = count;
+            int i = (int) (n & mask);
+            times[i] = System.nanoTime();
+            types[i] = type;
+            names[i] = name;
+            values[i] = value;
+            count = n + 1;
+        }
+
+        boolean appendEvents(StringBuilder json, long sinceNanos, boolean first) {
+            long end = count;
+            long start = Math.max(0, end - times.length);
+            if (end == start)
+                return first;
+
+            first = appendSeparator(json, first);
+            json.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(threadId)
+                    .append(",\"args\":{\"name\":");
+            appendString(json, threadName);
+            json.append("}}");
+
+            // Sections that began before the window (or were overwritten) would end
+            // without a start; skip those ends so every thread's nesting stays balanced.
+            int depth = 0;
+            for (long n = start; n < end; n++) {
+                int i = (int) (n & mask);
+                long time = times[i];
+                if (time < sinceNanos)
+                    continue;
+                byte type = types[i];
+                if (type == END) {
+                    if (depth == 0)
+                        continue;
+                    depth--;
+                } else if (type == BEGIN) {
+                    depth++;
+                }
+                json.append(',');
+                json.append("{\"ph\":\"").append(type == BEGIN ? 'B' : type == END ? 'E' : 'C')
+                        .append("\",\"pid\":1,\"tid\":").append(threadId).append(",\"ts\":");
+                appendMicros(json, time);
+                if (type != END) {
+                    json.append(",\"name\":");
+                    appendString(json, names[i]);
+                }
+                if (type == COUNTER) {
+                    json.append(",\"args\":{\"value\":").append(values[i]).append('}');
+                }
+                json.append('}');
+            }
+            return first;
+        }
+    }
+
+    private static boolean appendSeparator(StringBuilder json, boolean first) {
+        if (!first) {
+            json.append(',');
+        }
+        return false;
+    }
+
+    // Chrome wants microseconds; keep the nanoseconds as three decimals.
+    private static void appendMicros(StringBuilder json, long nanos) {
+        json.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100)
+            json.append('0');
+        if (fraction < 10)
+            json.append('0');
+        json.append(fraction);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(' ');
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
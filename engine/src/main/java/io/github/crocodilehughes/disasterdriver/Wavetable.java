@@ -0,0 +1,83 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * A single-cycle waveform built from a harmonic series, precomputed once so
+ * oscillators only need a table lookup per sample instead of Math.sin calls.
+ *
+ * One table is kept per octave of pitch. Each table only contains the
+ * harmonics that stay below Nyquist for the highest pitch in its octave, so
+ * high notes don't alias.
+ */
+public class Wavetable {
+
+    static final int TABLE_BITS = 11;
+    static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    // Lowest band covers everything up to this fundamental, each band above doubles it.
+    private static final double LOWEST_BAND_TOP_HZ = 40.0;
+
+    public static final double[] SINE = { 1.0 };
+    // Fundamental, 2nd harmonic (octave), 3rd harmonic (fifth) - the engine drone.
+    public static final double[] ENGINE = { 1.0, 0.5, 0.25 };
+
+    private final int sampleRate;
+    private final double[] bandTopHz;
+    // Each table has one extra guard sample equal to the first, so interpolation never wraps.
+    private final float[][] tables;
+
+    public Wavetable(double[] harmonicAmplitudes, int sampleRate) {
+        this.sampleRate = sampleRate;
+        double nyquist = sampleRate / 2.0;
+
+        int bandCount = 1;
+        while (LOWEST_BAND_TOP_HZ * (1 << (bandCount - 1)) < nyquist) {
+            bandCount++;
+        }
+
+        bandTopHz = new double[bandCount];
+        tables = new float[bandCount][];
+        float[] previous = null;
+        int previousHarmonics = -1;
+        for (int band = 0; band < bandCount; band++) {
+            bandTopHz[band] = LOWEST_BAND_TOP_HZ * (1 << band);
+            int harmonics = Math.min(harmonicAmplitudes.length, (int) (nyquist / bandTopHz[band]));
+            harmonics = Math.max(harmonics, 1);
+            // Bands with the same harmonic count are identical, share the table.
+            if (harmonics == previousHarmonics) {
+                tables[band] = previous;
+                continue;
+            }
+            previous = buildTable(harmonicAmplitudes, harmonics);
+            previousHarmonics = harmonics;
+            tables[band] = previous;
+        }
+    }
+
+    private static float[] buildTable(double[] amplitudes, int harmonics) {
+        float[] table = new float[TABLE_SIZE + 1];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double angle = 2.0 * Math.PI * i / TABLE_SIZE;
+            double value = 0;
+            for (int h = 0; h < harmonics; h++) {
+                value += amplitudes[h] * Math.sin(angle * (h + 1));
+            }
+            table[i] = (float) value;
+        }
+        table[TABLE_SIZE] = table[0];
+        return table;
+    }
+
+    /** Returns the table to use for a fundamental of the given frequency. */
+    float[] tableFor(double frequency) {
+        for (int band = 0; band < bandTopHz.length; band++) {
+            if (frequency <= bandTopHz[band]) {
+                return tables[band];
+            }
+        }
+        return tables[tables.length - 1];
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.crocodilehughes.disasterdriver;
+
+/**
+ * Reads a {@link Wavetable} with a 32-bit fixed-point phase accumulator and
+ * linear interpolation between neighbouring table samples. The phase wraps
+ * for free on integer overflow, so there is no modulo in the sample loop.
+ */
+public class WavetableOscillator {
+
+    private static final int FRACTION_BITS = 32 - Wavetable.TABLE_BITS;
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+    private static final float FRACTION_SCALE = 1.0f / (1 << FRACTION_BITS);
+    private static final double PHASE_RANGE = 4294967296.0; // 2^32
+
+    private final Wavetable wavetable;
+    private float[] table;
+    private int phase;
+    private int increment;
+    private double frequency;
+
+    public WavetableOscillator(Wavetable wavetable) {
+        this.wavetable = wavetable;
+        setFrequency(220.0);
+    }
+
+    public void setFrequency(double frequency) {
+        if (frequency == this.frequency)
+            return;
+        this.frequency = frequency;
+        this.table = wavetable.tableFor(frequency);
+        this.increment = (int) (long) (frequency / wavetable.getSampleRate() * PHASE_RANGE);
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /** Restarts the waveform at phase zero, like a fresh note. */
+    public void resetPhase() {
+        phase = 0;
+    }
+
+    public float nextSample() {
+        int index = phase >>> FRACTION_BITS;
+        float fraction = (phase & FRACTION_MASK) * FRACTION_SCALE;
+        float a = table[index];
+        float sample = a + (table[index + 1] - a) * fraction;
+        phase += increment;
+        return sample;
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The race tick must not allocate: any garbage made 60+ times a second ends up
+ * as a GC pause in the middle of a race.
+ */
+public class AllocationTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    @Test
+    public void counterTextFormatsInPlace() {
+        CounterText text = new CounterText("Score: ");
+        assertTrue(text.set(0));
+        assertEquals("Score: 0", text.toString());
+        assertTrue(text.set(1234567));
+        assertEquals("Score: 1234567", text.toString());
+        assertFalse(text.set(1234567));
+        assertTrue(text.set(-42));
+        assertEquals("Score: -42", text.toString());
+        assertTrue(text.set(Long.MIN_VALUE));
+        assertEquals("Score: " + Long.MIN_VALUE, text.toString());
+    }
+
+    @Test
+    public void raceTickDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeAllocationCounting(threads);
+
+        Race race = new Race();
+        // Let the JIT settle; class loading and the interpreter can allocate at first.
+        race.run(200_000);
+
+        long threadId = Thread.currentThread().getId();
+        // What reading the counter costs by itself, so it isn't blamed on the race.
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        int frames = 30 * 60 * 60; // half an hour at 60 Hz
+        before = threads.getThreadAllocatedBytes(threadId);
+        race.run(frames);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue(race.ticks > frames / 2);
+        assertEquals("bytes allocated over " + race.ticks + " ticks", 0, allocated);
+    }
+
+    @Test
+    public void scrollingLayersDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeAllocationCounting(threads);
+
+        ScrollingLayer layer = new ScrollingLayer(500, 64);
+        layer.setPeriod(500 * 150);
+        for (int i = 0; i < 500; i++) {
+            layer.add(i % 2 * 100, i * 150, 16, 44, i % 2);
+        }
+        float checksum = 0;
+        for (int frame = 0; frame < 200_000; frame++) {
+            layer.update(frame * 15f, 1080);
+            checksum += layer.getVisibleTop(0);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < 30 * 60 * 60; frame++) {
+            // Forwards, then backwards as if driving upside down.
+            layer.update(frame < 50_000 ? frame * 15f : (100_000 - frame) * 15f, 1080);
+            checksum += layer.getVisibleTop(0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertFalse(Float.isNaN(checksum));
+        assertEquals("bytes allocated scrolling", 0, allocated);
+    }
+
+    @Test
+    public void tracingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeAllocationCounting(threads);
+
+        Tracer.setEnabled(true);
+        try {
+            // The first event makes this thread's ring; that one allocation is fine.
+            for (int i = 0; i < 200_000; i++) {
+                Tracer.begin("tick");
+                Tracer.counter("frames", i);
+                Tracer.end();
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+            before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 30 * 60 * 60; i++) {
+                Tracer.begin("tick");
+                Tracer.counter("frames", i);
+                Tracer.end();
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+            assertEquals("bytes allocated tracing", 0, allocated);
+        } finally {
+            Tracer.setEnabled(false);
+        }
+    }
+
+    private static void assumeAllocationCounting(com.sun.management.ThreadMXBean threads) {
+        assumeTrue("This JVM can't count allocated bytes per thread", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * What MainActivity does per frame: queue touches, run the frame's steps
+     * through the same RaceLoop, and update the timing and HUD.
+     */
+    private static final class Race {
+        final GameWorld world = new GameWorld();
+        final StepAccumulator accumulator = new StepAccumulator(GameWorld.TICKS_PER_SECOND, 5);
+        final InputLog inputLog = new InputLog();
+        final InputQueue inputQueue = new InputQueue(256);
+        final TiltFilter tiltFilter = new TiltFilter();
+        final RaceLoop loop = new RaceLoop(world, accumulator, inputQueue, inputLog, tiltFilter);
+        final FrameMetrics frameMetrics = new FrameMetrics(new LatencyHistogram(), new LatencyHistogram(), 60f);
+        final CounterText scoreText = new CounterText("Score: ");
+        long ticks;
+        long now;
+
+        Race() {
+            world.setTrack(2400, 1080, 280, 1840);
+            world.setCar(800, 231, 73.5f, 31.5f);
+            world.setObstacleSize(56, 63);
+            world.reset();
+            inputLog.begin(world);
+        }
+
+        void run(int frames) {
+            for (int f = 0; f < frames; f++) {
+                now += FRAME_NANOS;
+                // Hold left for a moment every 1.5 s and right for the same in between,
+                // touching halfway through the frame.
+                int phase = f % 90;
+                long touch = now - FRAME_NANOS / 2;
+                if (phase == 10 || phase == 14) {
+                    inputQueue.offer(touch, InputQueue.LEFT, phase == 10);
+                } else if (phase == 50 || phase == 54) {
+                    inputQueue.offer(touch, InputQueue.RIGHT, phase == 50);
+                }
+                // And lean the phone a little now and then, as the sensor thread would.
+                if (phase == 30 || phase == 70) {
+                    tiltFilter.onAccelerometer(now, phase == 30 ? -2f : 0f, 9.6f);
+                }
+
+                long tickStart = System.nanoTime();
+                int tickBefore = world.getTick();
+                boolean crashed = loop.runFrame(now, FRAME_NANOS);
+                ticks += world.getTick() - tickBefore;
+                if (crashed) {
+                    // A fresh log would allocate; start the world over under the same one.
+                    world.reset();
+                    inputLog.begin(world);
+                }
+                scoreText.set(world.getScore());
+                frameMetrics.recordFrame(FRAME_NANOS, System.nanoTime() - tickStart);
+                long inputNanos = inputQueue.takeAppliedInputTime();
+                if (inputNanos != 0) {
+                    frameMetrics.recordInputLatency(now + FRAME_NANOS - inputNanos);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Renders each sound the game makes offline and compares a checksum of the
+ * PCM against the last known-good output. A deliberate change to the DSP
+ * breaks these on purpose: listen to the new output (AudioRenderer writes
+ * WAVs), then paste in the new checksums from the failure messages.
+ */
+public class AudioGoldenTest {
+
+    private static final int RATE = 48000;
+    private static final int BURST = 192;
+
+    private final AudioMixer mixer = new AudioMixer(RATE, new NoteCache(RATE, 512 * 1024));
+    private final OfflineAudioSink sink = new OfflineAudioSink(RATE, BURST);
+    private final AudioOutput output = new AudioOutput(sink, mixer);
+
+    private static long checksum(ByteBuffer pcm) {
+        CRC32 crc = new CRC32();
+        crc.update(pcm);
+        return crc.getValue();
+    }
+
+    private static void assertChecksum(long expected, OfflineAudioSink sink) {
+        long actual = checksum(sink.getPcm());
+        assertEquals("checksum 0x" + Long.toHexString(actual), expected, actual);
+    }
+
+    @Test
+    public void engineTone() {
+        mixer.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+        assertEquals(RATE, sink.record(output, RATE));
+        assertChecksum(0x23624a14L, sink);
+    }
+
+    @Test
+    public void engineTurning() {
+        // The race drops the pitch while a turn button is held.
+        mixer.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+        sink.record(output, RATE / 2);
+        mixer.onCommand(AudioMixer.CMD_SET_ENGINE_FREQUENCY, 180.0);
+        sink.record(output, RATE);
+        mixer.onCommand(AudioMixer.CMD_SET_ENGINE_FREQUENCY, AudioMixer.BASE_ENGINE_FREQUENCY);
+        assertEquals(3 * RATE / 2, sink.record(output, 3 * RATE / 2));
+        assertChecksum(0xb3af7aaaL, sink);
+    }
+
+    @Test
+    public void sadMelody() {
+        mixer.onCommand(AudioMixer.CMD_PLAY_MELODY, 0);
+        // Seven 300 ms notes and a 600 ms one, each followed by 50 ms of gap, then it stops by itself.
+        assertEquals(RATE * 3100 / 1000, sink.record(output, 10 * RATE));
+        assertFalse(mixer.isActive());
+        assertChecksum(0x8156c699L, sink);
+    }
+
+    @Test
+    public void healingThemeLoops() {
+        mixer.onCommand(AudioMixer.CMD_START_THEME, 0);
+        // Four chords, each arpeggio played twice: 24 notes of 120 ms.
+        int loopFrames = 24 * RATE * 120 / 1000;
+        assertEquals(2 * loopFrames, sink.record(output, 2 * loopFrames));
+        assertTrue(mixer.isActive());
+
+        ByteBuffer pcm = sink.getPcm();
+        ByteBuffer first = pcm.duplicate();
+        first.limit(loopFrames * 2);
+        ByteBuffer second = pcm.duplicate();
+        second.position(loopFrames * 2);
+        assertEquals(first, second);
+        assertChecksum(0x1f8fdb55L, sink);
+    }
+
+    @Test
+    public void wavHeaderDescribesThePcm() throws IOException {
+        mixer.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+        sink.record(output, RATE / 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sink.writeWav(out);
+
+        ByteBuffer wav = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(44 + RATE / 10 * 2, wav.capacity());
+        assertEquals(0x46464952, wav.getInt(0)); // "RIFF"
+        assertEquals(RATE, wav.getInt(24));
+        assertEquals(RATE / 10 * 2, wav.getInt(40));
+        wav.position(44);
+        assertEquals(sink.getPcm(), wav);
+    }
+}
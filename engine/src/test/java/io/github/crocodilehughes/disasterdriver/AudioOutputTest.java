@@ -0,0 +1,216 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AudioOutputTest {
+
+    private static final int RATE = 48000;
+    private static final int BURST = 192;
+
+    /**
+     * Stands in for a device that glitches on every write while its buffer is
+     * smaller than it needs, and whose playback position trails what's been
+     * written by exactly the buffer size.
+     */
+    private static class SimulatedSink implements AudioSink {
+        int neededFrames;
+        int bufferSize;
+        int underruns;
+        long written;
+        long writtenAt;
+        boolean playing;
+
+        SimulatedSink(int neededFrames) {
+            this.neededFrames = neededFrames;
+        }
+
+        @Override public int getSampleRate() { return RATE; }
+        @Override public int getFramesPerBurst() { return BURST; }
+        @Override public int getBufferCapacityFrames() { return 16 * BURST; }
+        @Override public int setBufferSizeFrames(int frames) { return bufferSize = frames; }
+        @Override public int getUnderrunCount() { return underruns; }
+        @Override public void play() { playing = true; }
+        @Override public void stop() { playing = false; written = 0; }
+        @Override public void pause() { playing = false; }
+        @Override public void flush() { written = 0; }
+
+        @Override
+        public int write(short[] buffer, int frames) {
+            if (bufferSize < neededFrames) {
+                underruns++;
+            }
+            written += frames;
+            writtenAt = System.nanoTime();
+            return frames;
+        }
+
+        @Override
+        public boolean getTimestamp(Timestamp out) {
+            out.framePosition = Math.max(0, written - bufferSize);
+            out.nanoTime = writtenAt;
+            return true;
+        }
+    }
+
+    private static AudioMixer newMixer() {
+        return new AudioMixer(RATE, new NoteCache(RATE, 1 << 16));
+    }
+
+    private static AudioOutput newOutput(SimulatedSink sink) {
+        return new AudioOutput(sink, newMixer());
+    }
+
+    private static void play(AudioOutput output, double seconds) {
+        int bursts = (int) (seconds * RATE / BURST);
+        for (int i = 0; i < bursts; i++) {
+            output.renderBurst();
+        }
+    }
+
+    @Test
+    public void startsDoubleBufferedAndGrowsUntilUnderrunsStop() {
+        SimulatedSink sink = new SimulatedSink(5 * BURST);
+        AudioOutput output = newOutput(sink);
+        assertEquals(AudioOutput.MIN_BURSTS * BURST, output.getBufferSizeFrames());
+
+        play(output, 1);
+        assertEquals(5 * BURST, output.getBufferSizeFrames());
+        assertEquals(5 * BURST, sink.bufferSize);
+        int underruns = sink.underruns;
+
+        play(output, 1);
+        assertEquals(underruns, sink.underruns);
+    }
+
+    @Test
+    public void neverGrowsPastTheMaximum() {
+        SimulatedSink sink = new SimulatedSink(100 * BURST);
+        AudioOutput output = newOutput(sink);
+        play(output, 1);
+        assertEquals(AudioOutput.MAX_BURSTS * BURST, output.getBufferSizeFrames());
+    }
+
+    @Test
+    public void shrinksAfterACleanStretchAndBacksOffWhenThatGlitches() {
+        SimulatedSink sink = new SimulatedSink(5 * BURST);
+        AudioOutput output = newOutput(sink);
+        play(output, 1);
+        assertEquals(5 * BURST, output.getBufferSizeFrames());
+
+        // The device gets better; a clean stretch lets the buffer come down.
+        sink.neededFrames = 3 * BURST;
+        play(output, AudioOutput.SETTLE_SECONDS + 1);
+        assertEquals(4 * BURST, output.getBufferSizeFrames());
+        play(output, AudioOutput.SETTLE_SECONDS);
+        assertEquals(3 * BURST, output.getBufferSizeFrames());
+
+        // Trying two bursts glitches once, then it goes back up and waits longer.
+        play(output, AudioOutput.SETTLE_SECONDS);
+        assertEquals(3 * BURST, output.getBufferSizeFrames());
+        int underruns = sink.underruns;
+        play(output, AudioOutput.SETTLE_SECONDS);
+        assertEquals(3 * BURST, output.getBufferSizeFrames());
+        assertEquals(underruns, sink.underruns);
+    }
+
+    @Test
+    public void latencyFollowsTheBufferSize() {
+        SimulatedSink sink = new SimulatedSink(4 * BURST);
+        AudioOutput output = newOutput(sink);
+        play(output, 1);
+
+        long expected = 4L * BURST * 1_000_000_000L / RATE;
+        long measured = output.getLastLatencyNanos();
+        assertTrue("latency " + measured, measured <= expected && measured > expected - 1_000_000);
+        assertTrue(output.getLatency().getCount() > 0);
+    }
+
+    @Test
+    public void mutedOrSuspendedRendersNothing() {
+        SimulatedSink sink = new SimulatedSink(0);
+        AudioMixer mixer = newMixer();
+        AudioOutput output = new AudioOutput(sink, mixer);
+        mixer.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+        assertTrue(output.update());
+        assertTrue(sink.playing);
+
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 1);
+        int rendered = output.getBurstsRendered();
+        for (int i = 0; i < 100; i++) {
+            assertFalse(output.update());
+        }
+        assertEquals(rendered, output.getBurstsRendered());
+        assertFalse(sink.playing);
+        assertEquals(0, sink.written);
+
+        // Backgrounded while muted, then unmuted: still nothing until it comes back.
+        mixer.onCommand(AudioMixer.CMD_SET_SUSPENDED, 1);
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 0);
+        assertFalse(output.update());
+        assertEquals(rendered, output.getBurstsRendered());
+
+        mixer.onCommand(AudioMixer.CMD_SET_SUSPENDED, 0);
+        assertTrue(output.update());
+        assertTrue(sink.playing);
+        assertEquals(rendered + 1, output.getBurstsRendered());
+    }
+
+    @Test
+    public void gameOverMelodyDoesNotComeBackOnUnmute() {
+        AudioMixer mixer = newMixer();
+        short[] block = new short[BURST];
+        mixer.onCommand(AudioMixer.CMD_PLAY_MELODY, 0);
+        mixer.render(block, BURST);
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 1);
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 0);
+        assertFalse(mixer.isActive());
+
+        // Crashing while muted doesn't queue it up for later either.
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 1);
+        mixer.onCommand(AudioMixer.CMD_PLAY_MELODY, 0);
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 0);
+        assertFalse(mixer.isActive());
+
+        // The menu theme does hold its place.
+        mixer.onCommand(AudioMixer.CMD_START_THEME, 0);
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 1);
+        mixer.onCommand(AudioMixer.CMD_SET_MUTED, 0);
+        assertTrue(mixer.isActive());
+    }
+
+    @Test
+    public void unmutingFadesInWhereTheSoundLeftOff() {
+        AudioMixer reference = newMixer();
+        AudioMixer muted = newMixer();
+        reference.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+        muted.onCommand(AudioMixer.CMD_START_ENGINE, 0);
+
+        short[] expected = new short[BURST];
+        short[] actual = new short[BURST];
+        for (int i = 0; i < 3; i++) {
+            reference.render(expected, BURST);
+            muted.render(actual, BURST);
+        }
+        muted.onCommand(AudioMixer.CMD_SET_MUTED, 1);
+        muted.render(actual, BURST);
+        muted.onCommand(AudioMixer.CMD_SET_MUTED, 0);
+
+        // Starts from silence, then matches the voice that never stopped sample for sample.
+        int fadeFrames = RATE / 100;
+        for (int frame = 0; frame < fadeFrames + 2 * BURST; frame += BURST) {
+            reference.render(expected, BURST);
+            muted.render(actual, BURST);
+            for (int i = 0; i < BURST; i++) {
+                if (frame + i == 0) {
+                    assertEquals(0, actual[i]);
+                } else if (frame + i < fadeFrames) {
+                    assertTrue(Math.abs(actual[i]) <= Math.abs(expected[i]));
+                } else {
+                    assertEquals(expected[i], actual[i]);
+                }
+            }
+        }
+    }
+}
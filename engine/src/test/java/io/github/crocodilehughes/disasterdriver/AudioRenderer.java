@@ -0,0 +1,53 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders every sound the game makes to WAV files without a device, and says
+ * how much faster than realtime each one rendered.
+ *
+ * Run the main method from the IDE, or on the JVM with the test classpath:
+ * AudioRenderer [output dir] [sample rate]
+ */
+public class AudioRenderer {
+
+    private static final int BURST = 192;
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 48000;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+
+        render(dir, rate, "engine", new int[] { AudioMixer.CMD_START_ENGINE }, 10);
+        render(dir, rate, "sad_melody", new int[] { AudioMixer.CMD_PLAY_MELODY }, 10);
+        render(dir, rate, "healing_theme", new int[] { AudioMixer.CMD_START_THEME }, 10);
+        render(dir, rate, "menu", new int[] { AudioMixer.CMD_START_THEME, AudioMixer.CMD_START_ENGINE }, 10);
+    }
+
+    private static void render(File dir, int rate, String name, int[] commands, int maxSeconds)
+            throws IOException {
+        long start = System.nanoTime();
+        AudioMixer mixer = new AudioMixer(rate, new NoteCache(rate, 512 * 1024));
+        long built = System.nanoTime();
+        for (int command : commands) {
+            mixer.onCommand(command, 0);
+        }
+        OfflineAudioSink sink = new OfflineAudioSink(rate, BURST);
+        int frames = sink.record(new AudioOutput(sink, mixer), maxSeconds * rate);
+        long nanos = System.nanoTime() - built;
+
+        File file = new File(dir, name + ".wav");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            sink.writeWav(out);
+        }
+        double seconds = (double) frames / rate;
+        System.out.printf("%s: %.2fs of audio in %.1f ms (%.0fx), mixer setup %.1f ms%n",
+                file, seconds, nanos / 1e6, seconds * 1e9 / Math.max(1, nanos), (built - start) / 1e6);
+    }
+}
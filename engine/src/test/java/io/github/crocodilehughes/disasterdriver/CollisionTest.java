@@ -0,0 +1,103 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CollisionTest {
+
+    @Test
+    public void extentsFollowRotation() {
+        OrientedBox box = new OrientedBox();
+        box.set(0, 0, 100, 20, 0);
+        assertEquals(100f, box.getExtentX(), 0.001f);
+        assertEquals(20f, box.getExtentY(), 0.001f);
+
+        box.set(0, 0, 100, 20, 90);
+        assertEquals(20f, box.getExtentX(), 0.001f);
+        assertEquals(100f, box.getExtentY(), 0.001f);
+    }
+
+    @Test
+    public void rotatedCarFitsWhereUnrotatedOneDoesNot() {
+        OrientedBox box = new OrientedBox();
+        box.set(500, 500, 100, 20, 0);
+        assertTrue(box.crossesEdges(420, 580));
+
+        // Turned sideways the car is only 40 wide.
+        box.set(500, 500, 100, 20, 90);
+        assertFalse(box.crossesEdges(420, 580));
+    }
+
+    @Test
+    public void separatingAxisUsesTheBoxOwnAxes() {
+        OrientedBox box = new OrientedBox();
+        box.set(0, 0, 100, 10, 45);
+        // Sits inside the rotated box's bounding square but off its diagonal.
+        assertFalse(box.overlaps(60, -60, 5, 5));
+        assertTrue(box.overlaps(60, 60, 5, 5));
+        assertFalse(box.overlaps(300, 0, 5, 5));
+    }
+
+    @Test
+    public void gridFindsOnlyNearbyObstacles() {
+        CollisionGrid grid = new CollisionGrid(16, 64);
+        grid.insert(3, 1000, 1000, 20, 20);
+        grid.insert(7, -5000, 200, 20, 20);
+
+        OrientedBox box = new OrientedBox();
+        box.set(1000, 960, 50, 25, 0);
+        assertEquals(3, grid.findOverlap(box));
+
+        box.set(0, 0, 50, 25, 0);
+        assertEquals(-1, grid.findOverlap(box));
+
+        grid.remove(3);
+        box.set(1000, 960, 50, 25, 0);
+        assertEquals(-1, grid.findOverlap(box));
+        assertFalse(grid.contains(3));
+        assertEquals(1, grid.size());
+    }
+
+    @Test
+    public void gridMatchesBruteForce() {
+        java.util.Random random = new java.util.Random(42);
+        int n = 2000;
+        float[] x = new float[n];
+        float[] y = new float[n];
+        CollisionGrid grid = new CollisionGrid(n, 128);
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextFloat() * 4000 - 2000;
+            y[i] = random.nextFloat() * 40000;
+            grid.insert(i, x[i], y[i], 30, 30);
+        }
+
+        OrientedBox box = new OrientedBox();
+        for (int q = 0; q < 2000; q++) {
+            box.set(random.nextFloat() * 4000 - 2000, random.nextFloat() * 40000, 120, 40, random.nextFloat() * 360);
+            boolean expected = false;
+            for (int i = 0; i < n && !expected; i++) {
+                expected = box.overlaps(x[i], y[i], 30, 30);
+            }
+            assertEquals(expected, grid.findOverlap(box) != -1);
+        }
+    }
+
+    @Test
+    public void drivingIntoAnObstacleCrashes() {
+        GameWorld world = new GameWorld();
+        world.setTrack(2400, 1080, 280, 1840);
+        world.setCar(800, 231, 73.5f, 31.5f);
+        world.setObstacleSize(40, 40);
+        world.reset();
+
+        // Straight ahead of the car, a little way up the road.
+        float carRoadY = 800 + 31.5f - world.getScroll();
+        world.getObstacles().spawn(ObstaclePool.TYPE_CONE, 1200 - world.getRoadCenterX(), carRoadY - 400);
+
+        for (int i = 0; i < 5 * GameWorld.TICKS_PER_SECOND && !world.isCrashed(); i++) {
+            world.step();
+        }
+        assertTrue(world.isCrashed());
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameMetricsTest {
+
+    private static final long VSYNC_60 = 16_666_666L;
+
+    private static String report(FrameMetrics metrics) {
+        StringBuilder out = new StringBuilder();
+        metrics.appendReport(out);
+        return out.toString();
+    }
+
+    @Test
+    public void countsMissedVsyncs() {
+        FrameMetrics metrics = new FrameMetrics(new LatencyHistogram(), new LatencyHistogram(), 60f);
+        metrics.recordFrame(0, 1_000_000L);
+        metrics.recordFrame(VSYNC_60, 1_000_000L);
+        // Just under one and a half periods still rounds to one vsync.
+        metrics.recordFrame(VSYNC_60 * 14 / 10, 1_000_000L);
+        metrics.recordFrame(VSYNC_60 * 3, 1_000_000L);
+        assertEquals(3, metrics.getFrames());
+        assertEquals(2, metrics.getMissedFrames());
+    }
+
+    @Test
+    public void resetThenAnEmptyRaceReportsNothing() {
+        LatencyHistogram audioWrite = new LatencyHistogram();
+        LatencyHistogram audioLatency = new LatencyHistogram();
+        FrameMetrics metrics = new FrameMetrics(audioWrite, audioLatency, 60f);
+        for (int i = 0; i < 10; i++) {
+            metrics.recordFrame(VSYNC_60 * 2, 3_000_000L);
+            metrics.recordInputLatency(40_000_000L);
+            audioWrite.record(1_000_000L);
+            audioLatency.record(30_000_000L);
+        }
+
+        // Nothing gets recorded after the reset: the race ends before its first frame.
+        metrics.reset();
+        String report = report(metrics);
+        assertTrue(report, report.contains("frames=0\n"));
+        assertTrue(report, report.contains("missed_frames=0\n"));
+        for (String name : new String[] {"tick", "frame_interval", "input_latency", "audio_write", "audio_latency"}) {
+            assertTrue(report, report.contains(name + ".count=0\n"));
+            assertTrue(report, report.contains(name + ".max_us=0\n"));
+        }
+    }
+
+    @Test
+    public void resetIsAppliedByTheNextFrame() {
+        FrameMetrics metrics = new FrameMetrics(new LatencyHistogram(), new LatencyHistogram(), 60f);
+        metrics.recordFrame(VSYNC_60 * 4, 1_000_000L);
+        metrics.reset();
+        metrics.recordFrame(VSYNC_60, 1_000_000L);
+        assertEquals(1, metrics.getFrames());
+        assertEquals(0, metrics.getMissedFrames());
+        assertTrue(report(metrics).contains("tick.count=1\n"));
+    }
+}
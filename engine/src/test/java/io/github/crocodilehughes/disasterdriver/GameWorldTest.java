@@ -0,0 +1,99 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GameWorldTest {
+
+    private static GameWorld newWorld() {
+        GameWorld world = new GameWorld();
+        world.setTrack(2400, 1080, 280, 1840);
+        world.setCar(800, 231, 73.5f, 31.5f);
+        world.setObstacleSize(56, 63);
+        world.reset();
+        return world;
+    }
+
+    /** Feeds frames of the given length through the accumulator for the given wall time. */
+    private static GameWorld runAtRefreshRate(int hz, float seconds, boolean turnRight) {
+        GameWorld world = newWorld();
+        StepAccumulator accumulator = new StepAccumulator(GameWorld.TICKS_PER_SECOND, 5);
+        long frameNanos = 1_000_000_000L / hz;
+        long frames = (long) (seconds * hz);
+        for (long f = 0; f < frames; f++) {
+            int steps = accumulator.advance(frameNanos);
+            for (int i = 0; i < steps; i++) {
+                world.setInput(false, turnRight && world.getTick() % 40 < 3);
+                world.step();
+            }
+        }
+        return world;
+    }
+
+    @Test
+    public void sameInputsGiveSameRace() {
+        GameWorld a = runAtRefreshRate(60, 20f, true);
+        GameWorld b = runAtRefreshRate(60, 20f, true);
+        assertEquals(a.getTick(), b.getTick());
+        assertEquals(a.getScore(), b.getScore());
+        assertEquals(a.getCarX(), b.getCarX(), 0f);
+        assertEquals(a.isCrashed(), b.isCrashed());
+    }
+
+    @Test
+    public void refreshRateDoesNotChangeTheRace() {
+        GameWorld at60 = runAtRefreshRate(60, 10f, true);
+        GameWorld at120 = runAtRefreshRate(120, 10f, true);
+        GameWorld at90 = runAtRefreshRate(90, 10f, true);
+
+        // Ticks can differ by one depending on where the last frame boundary falls.
+        assertTrue(Math.abs(at60.getTick() - at120.getTick()) <= 1);
+        assertTrue(Math.abs(at60.getTick() - at90.getTick()) <= 1);
+        assertEquals(at60.getRoadScale(), at120.getRoadScale(), 0.001f);
+        assertEquals(at60.getRoadScale(), at90.getRoadScale(), 0.001f);
+    }
+
+    @Test
+    public void roadShrinksPerSecondNotPerFrame() {
+        GameWorld world = newWorld();
+        for (int i = 0; i < GameWorld.TICKS_PER_SECOND; i++) {
+            world.step();
+        }
+        assertEquals(1f - GameWorld.ROAD_SHRINK_RATE, world.getRoadScale(), 0.0001f);
+        assertEquals(1000, world.getScore());
+    }
+
+    @Test
+    public void rowsAboveTheCarShowTheRoadAhead() {
+        GameWorld world = newWorld();
+        for (int i = 0; i < 30; i++) {
+            world.step();
+        }
+        // The car's row is the road the car is on.
+        assertEquals(world.getRoadCenterX(), world.getRoadCenterX(800, 1f), 0.001f);
+        assertEquals(world.getRoadHalfWidth(), world.getRoadHalfWidth(800, 1f), 0.001f);
+
+        // Ten segments up the screen is where the car will be ten ticks from now.
+        float tenAhead = world.getRoadCenterX(800 - 10 * RoadCourse.SEGMENT_LENGTH, 1f);
+        float tenAheadHalfWidth = world.getRoadHalfWidth(800 - 10 * RoadCourse.SEGMENT_LENGTH, 1f);
+        for (int i = 0; i < 10; i++) {
+            world.step();
+        }
+        assertEquals(tenAhead, world.getRoadCenterX(), 0.001f);
+        assertEquals(tenAheadHalfWidth, world.getRoadHalfWidth(), 0.001f);
+    }
+
+    @Test
+    public void steeringOffTheRoadCrashes() {
+        GameWorld world = newWorld();
+        world.setInput(false, true);
+        for (int i = 0; i < 100 * GameWorld.TICKS_PER_SECOND && !world.isCrashed(); i++) {
+            world.step();
+        }
+        assertTrue(world.isCrashed());
+        int crashTick = world.getTick();
+        world.step();
+        assertEquals(crashTick, world.getTick());
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class InputLogTest {
+
+    private static GameWorld newWorld(long seed) {
+        GameWorld world = new GameWorld();
+        world.setTrack(2400, 1080, 280, 1840);
+        world.setCar(800, 231, 73.5f, 31.5f);
+        world.setObstacleSize(56, 63);
+        world.setSeed(seed);
+        world.reset();
+        return world;
+    }
+
+    /** Plays a wobbly race the way MainActivity does, recording as it goes. */
+    private static InputLog recordRace(GameWorld world) {
+        InputLog log = new InputLog();
+        log.begin(world);
+        for (int i = 0; i < 120 * GameWorld.TICKS_PER_SECOND && !world.isCrashed(); i++) {
+            int phase = world.getTick() % 90;
+            boolean left = phase >= 10 && phase < 14;
+            boolean right = phase >= 50 && phase < 54;
+            log.record(world.getTick(), left, right);
+            world.setInput(left, right);
+            world.step();
+        }
+        log.finish(world);
+        return log;
+    }
+
+    private static InputLog roundTrip(InputLog log) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        log.writeTo(bytes);
+        return InputLog.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void replayReproducesTheRace() throws IOException {
+        GameWorld original = newWorld(1234);
+        InputLog log = roundTrip(recordRace(original));
+
+        GameWorld replayed = RaceReplay.run(log);
+        assertTrue(RaceReplay.matches(log, replayed));
+        assertEquals(original.getTick(), replayed.getTick());
+        assertEquals(original.getCarX(), replayed.getCarX(), 0f);
+        assertEquals(original.getCarRotation(), replayed.getCarRotation(), 0f);
+    }
+
+    @Test
+    public void onlyChangesAreStored() throws IOException {
+        InputLog log = recordRace(newWorld(99));
+        int ticks = log.getFinalTick();
+        // Two presses and two releases every 90 ticks, give or take the last one.
+        assertTrue(log.getEventCount() <= 4 * (ticks / 90 + 1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        log.writeTo(bytes);
+        // Varint deltas fit in a byte or two per change.
+        assertTrue(bytes.size() < 100 + 2 * log.getEventCount());
+    }
+
+    @Test
+    public void changedGameplayFailsTheReplay() throws IOException {
+        InputLog log = recordRace(newWorld(5));
+
+        // Swap in a different obstacle seed, as if spawning had changed since recording.
+        GameWorld other = newWorld(6);
+        InputLog tampered = new InputLog();
+        tampered.begin(other);
+        InputLog.Reader changes = log.reader();
+        while (changes.hasNext()) {
+            int tick = changes.next();
+            tampered.record(tick, changes.isTurningLeft(), changes.isTurningRight());
+        }
+        // Claim the original outcome.
+        GameWorld original = RaceReplay.run(log);
+        tampered.finish(original);
+
+        assertTrue(RaceReplay.matches(log, original));
+        assertFalse(RaceReplay.matches(tampered, RaceReplay.run(tampered)));
+    }
+
+    /** Tilts left and right in a slow wave, with a button press now and then. */
+    private static InputLog recordTiltRace(GameWorld world) {
+        InputLog log = new InputLog();
+        log.begin(world);
+        for (int i = 0; i < 120 * GameWorld.TICKS_PER_SECOND && !world.isCrashed(); i++) {
+            int tilt = (int) Math.round(Math.sin(world.getTick() / 40.0) * 20);
+            boolean left = world.getTick() % 300 < 5;
+            log.record(world.getTick(), left, false, tilt);
+            world.setInput(left, false);
+            world.setTilt(tilt);
+            world.step();
+        }
+        log.finish(world);
+        return log;
+    }
+
+    @Test
+    public void tiltRacesReplay() throws IOException {
+        GameWorld original = newWorld(77);
+        InputLog log = roundTrip(recordTiltRace(original));
+        assertTrue(original.getTick() > 60);
+
+        GameWorld replayed = RaceReplay.run(log);
+        assertTrue(RaceReplay.matches(log, replayed));
+        assertEquals(original.getCarX(), replayed.getCarX(), 0f);
+        assertEquals(original.getCarRotation(), replayed.getCarRotation(), 0f);
+    }
+
+    /** A log's steering changes in the version 1 and 2 encoding, (delta << 2 | state) varints. */
+    private static byte[] legacyEvents(InputLog log) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputLog.Reader changes = log.reader();
+        int lastTick = 0;
+        while (changes.hasNext()) {
+            int tick = changes.next();
+            long value = ((long) (tick - lastTick) << 2)
+                    | (changes.isTurningLeft() ? InputLog.STATE_LEFT : 0)
+                    | (changes.isTurningRight() ? InputLog.STATE_RIGHT : 0);
+            lastTick = tick;
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void version1LogsStillReplay() throws IOException {
+        InputLog recorded = recordRace(newWorld(1234));
+        ByteArrayOutputStream current = new ByteArrayOutputStream();
+        recorded.writeTo(current);
+        ByteBuffer v3 = ByteBuffer.wrap(current.toByteArray());
+        byte[] events = legacyEvents(recorded);
+
+        // Version 1 had the lane lines (count, tops, height, margin) after the car.
+        ByteBuffer v1 = ByteBuffer.allocate(v3.capacity() + 24 + events.length);
+        v1.putInt(v3.getInt()).putShort((short) 1);
+        v3.getShort();
+        int setupLength = v3.getInt();
+        v1.putInt(setupLength + 24);
+        for (int i = 0; i < 8; i++) {
+            v1.putFloat(v3.getFloat());
+        }
+        v1.putInt(3).putFloat(280).putFloat(840).putFloat(1400).putFloat(280).putFloat(280);
+        v1.putFloat(v3.getFloat()).putFloat(v3.getFloat()).putLong(v3.getLong());
+        // Outcome and event count as they were; the events in the old encoding.
+        v1.putInt(v3.getInt()).putLong(v3.getLong()).put(v3.get()).putInt(v3.getInt());
+        v1.putInt(events.length).put(events);
+
+        InputLog log = InputLog.readFrom(new ByteArrayInputStream(v1.array()));
+        assertTrue(log.getFinalTick() > 0);
+        assertTrue(RaceReplay.matches(log, RaceReplay.run(log)));
+    }
+
+    /**
+     * A race recorded once and checked in. If this fails, gameplay or the
+     * simulation's arithmetic changed and every saved replay broke with it.
+     */
+    @Test
+    public void checkedInReplayStillEndsTheSame() throws IOException {
+        InputLog log;
+        try (InputStream in = InputLogTest.class.getResourceAsStream("recorded_race.ddr")) {
+            assertNotNull("recorded_race.ddr missing", in);
+            log = InputLog.readFrom(in);
+        }
+        assertEquals(400, log.getFinalTick());
+        assertEquals(6650, log.getFinalScore());
+        assertTrue(log.isCrashed());
+
+        GameWorld replayed = RaceReplay.run(log);
+        assertEquals(400, replayed.getTick());
+        assertEquals(6650, replayed.getScore());
+        assertTrue(replayed.isCrashed());
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputQueueTest {
+
+    private static final long TICK = 1_000_000_000L / GameWorld.TICKS_PER_SECOND;
+
+    @Test
+    public void eventsWaitForTheTickTheyBelongTo() {
+        InputQueue queue = new InputQueue(16);
+        queue.offer(TICK + 5, InputQueue.LEFT, true);
+        queue.offer(3 * TICK + 5, InputQueue.LEFT, false);
+
+        queue.advanceTo(TICK);
+        assertFalse(queue.isTurningLeft());
+        queue.advanceTo(2 * TICK);
+        assertTrue(queue.isTurningLeft());
+        assertEquals(TICK + 5, queue.takeAppliedInputTime());
+        assertEquals(0, queue.takeAppliedInputTime());
+        queue.advanceTo(3 * TICK);
+        assertTrue(queue.isTurningLeft());
+        // Released during this tick, so it still steers for it.
+        queue.advanceTo(4 * TICK);
+        assertTrue(queue.isTurningLeft());
+        queue.advanceTo(5 * TICK);
+        assertFalse(queue.isTurningLeft());
+        assertFalse(queue.isTurningRight());
+    }
+
+    @Test
+    public void tapShorterThanATickStillSteers() {
+        InputQueue queue = new InputQueue(16);
+        queue.offer(TICK + 100, InputQueue.RIGHT, true);
+        queue.offer(TICK + 200, InputQueue.RIGHT, false);
+        queue.advanceTo(2 * TICK);
+        assertTrue(queue.isTurningRight());
+        assertFalse(queue.isTurningLeft());
+        queue.advanceTo(3 * TICK);
+        assertFalse(queue.isTurningRight());
+    }
+
+    @Test
+    public void buttonsAreIndependent() {
+        InputQueue queue = new InputQueue(16);
+        queue.offer(10, InputQueue.LEFT, true);
+        queue.offer(20, InputQueue.RIGHT, true);
+        queue.offer(30, InputQueue.LEFT, false);
+        queue.advanceTo(TICK);
+        assertTrue(queue.isTurningLeft());
+        assertTrue(queue.isTurningRight());
+        queue.advanceTo(2 * TICK);
+        assertFalse(queue.isTurningLeft());
+        assertTrue(queue.isTurningRight());
+
+        queue.clear();
+        queue.advanceTo(3 * TICK);
+        assertFalse(queue.isTurningRight());
+    }
+
+    @Test
+    public void fullQueueDropsNewEvents() {
+        InputQueue queue = new InputQueue(2);
+        assertTrue(queue.offer(1, InputQueue.LEFT, true));
+        assertTrue(queue.offer(2, InputQueue.LEFT, false));
+        assertFalse(queue.offer(3, InputQueue.LEFT, true));
+        queue.advanceTo(TICK);
+        assertTrue(queue.offer(4, InputQueue.LEFT, true));
+    }
+
+    @Test
+    public void fullQueueStillTakesTheRelease() {
+        InputQueue queue = new InputQueue(4);
+        assertTrue(queue.offer(1, InputQueue.LEFT, true));
+        assertTrue(queue.offer(2, InputQueue.LEFT, false));
+        assertTrue(queue.offer(3, InputQueue.LEFT, true));
+        // The last slot is kept for left's release.
+        assertFalse(queue.offer(4, InputQueue.RIGHT, true));
+        assertTrue(queue.offer(5, InputQueue.RIGHT, false));
+        assertTrue(queue.offer(6, InputQueue.LEFT, false));
+        assertFalse(queue.offer(7, InputQueue.LEFT, true));
+
+        queue.advanceTo(TICK);
+        assertTrue(queue.isTurningLeft());
+        assertFalse(queue.isTurningRight());
+        queue.advanceTo(2 * TICK);
+        assertFalse(queue.isTurningLeft());
+    }
+
+    @Test
+    public void producerOnAnotherThreadDeliversEveryEventInOrder() throws Exception {
+        final InputQueue queue = new InputQueue(8);
+        final int ticks = 20_000;
+        // A press in every odd tick and a release in every even one.
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int tick = 1; tick <= ticks; tick++) {
+                    while (!queue.offer(tick * TICK - 1, InputQueue.LEFT, tick % 2 == 1)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        for (int tick = 1; tick <= ticks; tick++) {
+            long applied;
+            do {
+                assertTrue("producer stalled", System.nanoTime() < deadline);
+                queue.advanceTo(tick * TICK);
+                applied = queue.takeAppliedInputTime();
+                if (applied == 0) {
+                    Thread.yield();
+                }
+            } while (applied == 0);
+            assertEquals(tick * TICK - 1, applied);
+            // Pressed during odd ticks, pressed at the start of even ones.
+            assertTrue("tick " + tick, queue.isTurningLeft());
+        }
+        queue.advanceTo((ticks + 1) * TICK);
+        assertFalse(queue.isTurningLeft());
+        producer.join();
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesGetABucketEach() {
+        for (long v = 0; v < 64; v++) {
+            assertEquals(v, LatencyHistogram.bucketIndex(v));
+            assertEquals(v, LatencyHistogram.bucketValue((int) v));
+        }
+    }
+
+    @Test
+    public void bucketBoundariesAreContiguous() {
+        // From 64 on, each power of two splits into 32 buckets twice as wide as the last lot.
+        assertEquals(63, LatencyHistogram.bucketIndex(63));
+        assertEquals(64, LatencyHistogram.bucketIndex(64));
+        assertEquals(64, LatencyHistogram.bucketIndex(65));
+        assertEquals(65, LatencyHistogram.bucketIndex(66));
+        assertEquals(95, LatencyHistogram.bucketIndex(127));
+        assertEquals(96, LatencyHistogram.bucketIndex(128));
+        assertEquals(96, LatencyHistogram.bucketIndex(131));
+        assertEquals(97, LatencyHistogram.bucketIndex(132));
+
+        int last = LatencyHistogram.bucketIndex(0);
+        for (long v = 1; v < 1 << 20; v++) {
+            int index = LatencyHistogram.bucketIndex(v);
+            assertTrue("value " + v, index == last || index == last + 1);
+            last = index;
+        }
+    }
+
+    @Test
+    public void bucketValueIsWithinThreePercent() {
+        for (long v = 1; v < 1L << 40; v = v * 3 / 2 + 1) {
+            long mid = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(v));
+            assertEquals("value " + v, v, mid, v * 0.03 + 1);
+        }
+    }
+
+    @Test
+    public void percentilesOfAnEvenSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax());
+        assertEquals(50_500_000L, histogram.getMean());
+        assertEquals(1_000_000L, histogram.getPercentile(1), 30_000);
+        assertEquals(50_000_000L, histogram.getPercentile(50), 1_500_000);
+        assertEquals(99_000_000L, histogram.getPercentile(99), 3_000_000);
+        // The top bucket's midpoint, but never past the largest value actually seen.
+        assertEquals(100_000_000L, histogram.getPercentile(100), 3_000_000);
+        assertTrue(histogram.getPercentile(100) <= histogram.getMax());
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals((1L << 40) - 1, histogram.getMax());
+    }
+
+    @Test
+    public void requestedResetReadsEmptyBeforeTheNextRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000L);
+        histogram.requestReset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(99));
+
+        histogram.record(2_000L);
+        assertEquals(1, histogram.getCount());
+        assertEquals(2_000L, histogram.getMax());
+    }
+}
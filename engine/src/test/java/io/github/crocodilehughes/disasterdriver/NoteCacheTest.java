@@ -0,0 +1,72 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NoteCacheTest {
+
+    private static final int RATE = 8000;
+    // 100 ms at 8 kHz: 800 samples, 1600 bytes.
+    private static final int NOTE_MS = 100;
+    private static final long NOTE_BYTES = 1600;
+
+    private static short[] note(NoteCache cache, double frequency) {
+        return cache.get(frequency, NOTE_MS, NoteCache.WAVE_SINE, 0.5f);
+    }
+
+    @Test
+    public void hitsHandOutTheSameBuffer() {
+        NoteCache cache = new NoteCache(RATE, 1 << 20);
+        short[] a = note(cache, 440);
+        assertSame(a, note(cache, 440));
+        assertNotSame(a, cache.get(440, NOTE_MS, NoteCache.WAVE_CLIPPED_SINE, 0.5f));
+        assertNotSame(a, cache.get(440, NOTE_MS, NoteCache.WAVE_SINE, 0.4f));
+        assertEquals(NoteCache.sampleCount(RATE, NOTE_MS), a.length);
+        assertEquals(3, cache.size());
+        assertEquals(3 * NOTE_BYTES, cache.getUsedBytes());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedFirst() {
+        NoteCache cache = new NoteCache(RATE, 3 * NOTE_BYTES);
+        short[] a = note(cache, 220);
+        short[] b = note(cache, 330);
+        short[] c = note(cache, 440);
+        assertSame(a, note(cache, 220)); // a is now the most recent, b the eldest
+        short[] d = note(cache, 550);
+        assertEquals(3, cache.size());
+        assertEquals(3 * NOTE_BYTES, cache.getUsedBytes());
+
+        assertSame(a, note(cache, 220));
+        assertSame(c, note(cache, 440));
+        // b went; bringing it back pushes out d, now the eldest.
+        assertNotSame(b, note(cache, 330));
+        assertNotSame(d, note(cache, 550));
+        assertEquals(3 * NOTE_BYTES, cache.getUsedBytes());
+    }
+
+    @Test
+    public void bytesFollowTheNoteLengths() {
+        NoteCache cache = new NoteCache(RATE, 1 << 20);
+        cache.get(440, 100, NoteCache.WAVE_SINE, 0.5f);
+        cache.get(440, 250, NoteCache.WAVE_SINE, 0.5f);
+        cache.get(440, 100, NoteCache.WAVE_SINE, 0.5f);
+        assertEquals((800 + 2000) * 2, cache.getUsedBytes());
+    }
+
+    @Test
+    public void aNoteBiggerThanTheBudgetIsStillKept() {
+        NoteCache cache = new NoteCache(RATE, NOTE_BYTES / 2);
+        short[] a = note(cache, 440);
+        assertEquals(1, cache.size());
+        assertEquals(NOTE_BYTES, cache.getUsedBytes());
+        assertSame(a, note(cache, 440));
+
+        // The next one replaces it rather than joining it.
+        note(cache, 660);
+        assertEquals(1, cache.size());
+        assertEquals(NOTE_BYTES, cache.getUsedBytes());
+        assertNotSame(a, note(cache, 440));
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObstaclePoolTest {
+
+    @Test
+    public void releasedSlotsAreReused() {
+        ObstaclePool pool = new ObstaclePool(2, 128);
+        pool.setConeSize(10, 10);
+        int a = pool.spawn(ObstaclePool.TYPE_CONE, 0, 0);
+        int b = pool.spawn(ObstaclePool.TYPE_CONE, 0, 500);
+        assertEquals(-1, pool.spawn(ObstaclePool.TYPE_CONE, 0, 1000));
+
+        pool.release(a);
+        assertFalse(pool.isActive(a));
+        assertEquals(a, pool.spawn(ObstaclePool.TYPE_CONE_ROW, 50, 1000));
+        assertEquals(ObstaclePool.TYPE_CONE_ROW, pool.getType(a));
+        assertEquals(2, pool.size());
+
+        // The row is three cones wide in the collision grid too.
+        OrientedBox box = new OrientedBox();
+        box.set(50 + 25, 1000, 1, 1, 0);
+        assertEquals(a, pool.findOverlap(box));
+        assertTrue(pool.isActive(b));
+    }
+
+    @Test
+    public void obstaclesGetDenserAsTheScoreClimbs() {
+        assertEquals(GameWorld.OBSTACLE_START_GAP, GameWorld.getObstacleGap(0), 0.001f);
+        assertTrue(GameWorld.getObstacleGap(10000) < GameWorld.getObstacleGap(0));
+        assertTrue(GameWorld.getObstacleGap(100000) < GameWorld.getObstacleGap(10000));
+        assertTrue(GameWorld.getObstacleGap(Long.MAX_VALUE / 2) >= GameWorld.OBSTACLE_MIN_GAP);
+        assertTrue(GameWorld.getRowChance(0) < GameWorld.getRowChance(50000));
+    }
+
+    @Test
+    public void obstaclesSpawnAheadAndDespawnBehind() {
+        GameWorld world = new GameWorld();
+        world.setTrack(2400, 1080, 280, 1840);
+        world.setCar(800, 231, 73.5f, 31.5f);
+        world.setObstacleSize(56, 63);
+        world.setSeed(7);
+        world.reset();
+        ObstaclePool obstacles = world.getObstacles();
+
+        int spawned = 0;
+        int previousSize = 0;
+        // Drive straight until a cone gets in the way or a minute passes.
+        for (int i = 0; i < 60 * GameWorld.TICKS_PER_SECOND && !world.isCrashed(); i++) {
+            world.step();
+            if (obstacles.size() > previousSize) {
+                spawned++;
+                for (int id = 0; id < obstacles.getCapacity(); id++) {
+                    if (obstacles.isActive(id)) {
+                        // Everything on the road is on screen or just above it.
+                        assertTrue(obstacles.getY(id) + world.getScroll() < 1080);
+                    }
+                }
+            }
+            previousSize = obstacles.size();
+            // Only a screenful is ever live.
+            assertTrue(obstacles.size() < 10);
+        }
+        assertTrue(spawned > 0);
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays input logs pulled off a device (files/replays/*.ddr) and checks each
+ * one still ends on the same tick with the same score. Exits non-zero if any
+ * don't, so it can gate gameplay changes.
+ *
+ * Run the main method from the IDE, or on the JVM with the test classpath:
+ * ReplayRunner race_1.ddr race_2.ddr ...
+ */
+public class ReplayRunner {
+
+    public static void main(String[] args) throws IOException {
+        int failures = 0;
+        for (String path : args) {
+            InputLog log;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(new File(path)))) {
+                log = InputLog.readFrom(in);
+            }
+
+            long start = System.nanoTime();
+            GameWorld world = RaceReplay.run(log);
+            long nanos = System.nanoTime() - start;
+
+            boolean ok = RaceReplay.matches(log, world);
+            if (!ok)
+                failures++;
+            double raceSeconds = (double) world.getTick() / GameWorld.TICKS_PER_SECOND;
+            System.out.printf("%s %s: tick %d/%d score %d/%d crashed %b/%b, %.1fs of race in %.1f ms (%.0fx)%n",
+                    ok ? "ok  " : "FAIL", path,
+                    world.getTick(), log.getFinalTick(),
+                    world.getScore(), log.getFinalScore(),
+                    world.isCrashed(), log.isCrashed(),
+                    raceSeconds, nanos / 1e6, raceSeconds * 1e9 / Math.max(1, nanos));
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
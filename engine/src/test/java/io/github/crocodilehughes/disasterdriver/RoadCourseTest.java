@@ -0,0 +1,88 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoadCourseTest {
+
+    private static final float SCREEN_WIDTH = 1080;
+    private static final float ROAD_WIDTH = 828;
+    private static final float L = RoadCourse.SEGMENT_LENGTH;
+
+    private final RoadCourse course = new RoadCourse();
+
+    @Before
+    public void setUp() {
+        course.setTrack(SCREEN_WIDTH, ROAD_WIDTH);
+    }
+
+    // The road center the race computed every frame before there was a RoadCourse.
+    private static float oldCenter(float time) {
+        return oldNoise(time * 0.2f) * (SCREEN_WIDTH / 3.5f) + oldNoise(time * 6.0f) * (SCREEN_WIDTH / 25f);
+    }
+
+    private static float oldNoise(float x) {
+        int intX = (int) Math.floor(x);
+        float v1 = RoadCourse.getPseudoRandom(intX);
+        float v2 = RoadCourse.getPseudoRandom(intX + 1);
+        float f = (1 - (float) StrictMath.cos((x - intX) * 3.1415927f)) * 0.5f;
+        return v1 * (1 - f) + v2 * f;
+    }
+
+    @Test
+    public void matchesTheOldPerFrameNoise() {
+        for (int i = 0; i < 5000; i++) {
+            course.advanceTo(i * L);
+            assertEquals("segment " + i, oldCenter(i * GameWorld.STEP_SECONDS), course.getCenter(i * L), 0.001f);
+        }
+    }
+
+    @Test
+    public void staysRightAfterTheRingWraps() {
+        // Several times round the 512-segment ring, a tick at a time as the race goes,
+        // and in one jump; then read back the most recent stretch.
+        RoadCourse jumped = new RoadCourse();
+        jumped.setTrack(SCREEN_WIDTH, ROAD_WIDTH);
+        for (int i = 0; i <= 2000; i++) {
+            course.advanceTo(i * L);
+        }
+        jumped.advanceTo(2000 * L);
+        for (int i = 1700; i <= 2150; i++) {
+            float distance = (i + 0.5f) * L;
+            float halfway = (oldCenter(i * GameWorld.STEP_SECONDS) + oldCenter((i + 1) * GameWorld.STEP_SECONDS)) / 2;
+            assertEquals("segment " + i, halfway, course.getCenter(distance), 0.002f);
+            assertEquals(jumped.getCenter(distance), course.getCenter(distance), 0f);
+        }
+    }
+
+    @Test
+    public void lookupsOutsideTheWindowClampToItsEnds() {
+        course.advanceTo(1000 * L);
+        // 1000 + 160 look-ahead generated; the ring keeps the newest 512 of them.
+        int newest = 1160;
+        int oldest = newest - 511;
+        float oldestCenter = course.getCenter(oldest * L);
+        float newestCenter = course.getCenter(newest * L);
+        assertEquals(oldCenter(oldest * GameWorld.STEP_SECONDS), oldestCenter, 0.001f);
+        assertEquals(oldCenter(newest * GameWorld.STEP_SECONDS), newestCenter, 0.001f);
+
+        assertEquals(oldestCenter, course.getCenter((oldest - 1) * L), 0f);
+        assertEquals(oldestCenter, course.getCenter(0), 0f);
+        assertEquals(newestCenter, course.getCenter((newest + 1) * L), 0f);
+        assertEquals(newestCenter, course.getCenter(1_000_000f), 0f);
+        // Just inside the oldest segment still interpolates towards the next.
+        assertTrue(oldestCenter != course.getCenter((oldest + 0.5f) * L));
+    }
+
+    @Test
+    public void halfWidthShrinksWithTheScale() {
+        course.advanceTo(300 * L);
+        assertEquals(ROAD_WIDTH / 2, course.getHalfWidth(0), 0f);
+        for (int i = 0; i < 400; i++) {
+            assertEquals("segment " + i, ROAD_WIDTH * course.getScale(i * L) / 2, course.getHalfWidth(i * L), 0.001f);
+        }
+        assertTrue(course.getHalfWidth(400 * L) < course.getHalfWidth(0));
+    }
+}
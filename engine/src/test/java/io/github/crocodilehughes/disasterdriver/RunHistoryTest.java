@@ -0,0 +1,190 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RunHistoryTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("run_history", ".bin");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        for (File aside : movedAside()) {
+            aside.delete();
+        }
+    }
+
+    private File[] movedAside() {
+        File[] found = file.getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(file.getName() + ".unreadable-");
+            }
+        });
+        return found != null ? found : new File[0];
+    }
+
+    private static RunRecord run(long score) {
+        return new RunRecord(1_700_000_000_000L + score, score, (int) score, 0xFFFF0000, score % 2 == 0, 0xFFFFFFFF);
+    }
+
+    private RunHistory open(int topSize, long legacyBest) throws InterruptedException {
+        RunHistory history = new RunHistory(file, topSize);
+        history.load(legacyBest);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        history.whenLoaded(DIRECT, new RunHistory.Listener() {
+            @Override
+            public void onLoaded(RunHistory h) {
+                loaded.countDown();
+            }
+        });
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        return history;
+    }
+
+    @Test
+    public void runsSurviveAReopen() throws InterruptedException {
+        RunHistory history = open(3, 0);
+        long[] scores = { 500, 2500, 100, 4000, 2500, 900 };
+        for (long score : scores) {
+            history.append(run(score));
+        }
+        assertEquals(4000, history.getBestScore());
+        history.flush();
+
+        RunHistory reopened = open(3, 0);
+        assertEquals(scores.length, reopened.getRunCount());
+        List<RunRecord> top = reopened.getTopRuns();
+        assertEquals(3, top.size());
+        assertEquals(4000, top.get(0).score);
+        assertEquals(2500, top.get(1).score);
+        assertEquals(2500, top.get(2).score);
+        assertEquals(4000, top.get(0).durationMillis);
+        assertTrue(top.get(0).decalEnabled);
+        assertEquals(0xFFFF0000, top.get(0).carColor);
+    }
+
+    @Test
+    public void appendsInOneWindowShareAnFsync() throws InterruptedException {
+        RunHistory history = open(10, 0);
+        for (int i = 0; i < 20; i++) {
+            history.append(run(i));
+        }
+        Thread.sleep(RunHistory.BATCH_DELAY_MS * 3);
+        assertEquals(1, history.getSyncCount());
+        assertEquals(8 + 20 * RunHistory.RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void partialRecordIsDropped() throws InterruptedException, IOException {
+        RunHistory history = open(5, 0);
+        history.append(run(10));
+        history.append(run(20));
+        history.flush();
+        // As if the process died halfway through writing a third.
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() + RunHistory.RECORD_SIZE / 2);
+        }
+
+        RunHistory reopened = open(5, 0);
+        assertEquals(2, reopened.getRunCount());
+        reopened.append(run(30));
+        reopened.flush();
+        assertEquals(3, open(5, 0).getRunCount());
+    }
+
+    @Test
+    public void legacyHighScoreStillCounts() throws InterruptedException {
+        RunHistory history = open(5, 7000);
+        assertEquals(7000, history.getBestScore());
+        history.append(run(8000));
+        assertEquals(8000, history.getBestScore());
+    }
+
+    @Test
+    public void newerVersionIsMovedAsideNotWiped() throws InterruptedException, IOException {
+        byte[] newer = { 0x44, 0x44, 0x52, 0x48, 0, 0, 0, 2, 1, 2, 3, 4 };
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(newer);
+        }
+
+        RunHistory history = open(5, 0);
+        assertEquals(0, history.getRunCount());
+        File[] aside = movedAside();
+        assertEquals(1, aside.length);
+        assertArrayEquals(newer, Files.readAllBytes(aside[0].toPath()));
+
+        history.append(run(10));
+        history.flush();
+        assertEquals(1, open(5, 0).getRunCount());
+    }
+
+    @Test
+    public void unknownFileIsMovedAside() throws InterruptedException, IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a run history".getBytes("UTF-8"));
+        }
+        RunHistory history = open(5, 0);
+        assertEquals(0, history.getRunCount());
+        assertEquals(1, movedAside().length);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void sourceIsAskedOnTheLoaderThread() throws InterruptedException {
+        final Thread caller = Thread.currentThread();
+        final boolean[] onCaller = new boolean[1];
+        RunHistory history = new RunHistory(new RunHistory.Source() {
+            @Override
+            public File getFile() {
+                onCaller[0] |= Thread.currentThread() == caller;
+                return file;
+            }
+
+            @Override
+            public long getLegacyBestScore() {
+                onCaller[0] |= Thread.currentThread() == caller;
+                return 4000;
+            }
+        }, 5);
+        history.load();
+        final CountDownLatch loaded = new CountDownLatch(1);
+        history.whenLoaded(DIRECT, new RunHistory.Listener() {
+            @Override
+            public void onLoaded(RunHistory h) {
+                loaded.countDown();
+            }
+        });
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        assertFalse(onCaller[0]);
+        assertEquals(4000, history.getBestScore());
+    }
+}
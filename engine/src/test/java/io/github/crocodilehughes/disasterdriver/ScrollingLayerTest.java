@@ -0,0 +1,72 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScrollingLayerTest {
+
+    @Test
+    public void repeatingDashesWrapBothWays() {
+        // A 280px dash every 560px, like the lane lines on a 1080px tall screen.
+        ScrollingLayer dashes = new ScrollingLayer(1, 8);
+        dashes.setPeriod(560);
+        dashes.add(0, 280, 10, 280, 0);
+
+        dashes.update(0, 1080);
+        assertEquals(2, dashes.getVisibleCount());
+        assertEquals(280, dashes.getVisibleTop(0), 0.001f);
+        assertEquals(840, dashes.getVisibleTop(1), 0.001f);
+
+        // Scrolled down past one period: the dash that left the bottom is back at the top.
+        dashes.update(600, 1080);
+        assertEquals(3, dashes.getVisibleCount());
+        assertEquals(-240, dashes.getVisibleTop(0), 0.001f);
+        assertEquals(320, dashes.getVisibleTop(1), 0.001f);
+        assertEquals(880, dashes.getVisibleTop(2), 0.001f);
+
+        // Driving upside down scrolls the other way.
+        dashes.update(-300, 1080);
+        assertEquals(2, dashes.getVisibleCount());
+        assertEquals(-20, dashes.getVisibleTop(0), 0.001f);
+        assertEquals(540, dashes.getVisibleTop(1), 0.001f);
+    }
+
+    @Test
+    public void parallaxScalesAndCanReverseTheScroll() {
+        ScrollingLayer layer = new ScrollingLayer(1, 4);
+        layer.add(0, 100, 10, 10, 0);
+        layer.setParallax(0.5f);
+        layer.update(200, 1000);
+        assertEquals(200, layer.getVisibleTop(0), 0.001f);
+        layer.setParallax(-1f);
+        layer.update(50, 1000);
+        assertEquals(50, layer.getVisibleTop(0), 0.001f);
+        layer.update(200, 1000);
+        assertEquals(0, layer.getVisibleCount());
+    }
+
+    @Test
+    public void workFollowsWhatIsVisibleNotTheLayerSize() {
+        // Ten thousand markers 100px apart, added out of order.
+        ScrollingLayer markers = new ScrollingLayer(10_000, 64);
+        for (int i = 9_999; i >= 0; i--) {
+            markers.add(0, -i * 100f, 8, 20, 0);
+        }
+        assertEquals(10_000, markers.size());
+
+        for (float scroll = 1000; scroll < 990_000; scroll += 12_345) {
+            markers.update(scroll, 1000);
+            // 100px apart over a window 1000px tall plus a marker's height.
+            int visible = markers.getVisibleCount();
+            assertTrue(visible == 10 || visible == 11);
+            assertTrue(markers.getScannedCount() <= visible + 1);
+            for (int i = 0; i < markers.getVisibleCount(); i++) {
+                float top = markers.getVisibleTop(i);
+                assertTrue(top > -20 && top < 1000);
+            }
+        }
+        markers.update(2_000_000, 1000);
+        assertEquals(0, markers.getVisibleCount());
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SequencerTest {
+
+    private static final int RATE = 48000;
+
+    private static int[] render(Sequencer.Sequence sequence, int frames, int block) {
+        Sequencer sequencer = new Sequencer();
+        sequencer.start(sequence);
+        int[] out = new int[frames];
+        int[] mix = new int[block];
+        for (int done = 0; done < frames; done += block) {
+            int count = Math.min(block, frames - done);
+            Arrays.fill(mix, 0);
+            sequencer.render(mix, count);
+            System.arraycopy(mix, 0, out, done, count);
+        }
+        return out;
+    }
+
+    @Test
+    public void notesLandOnTheSameFrameWhateverTheBlockSize() {
+        Sequencer.Sequence theme = new Sequencer.Sequence(AudioMixer.HEALING_THEME, RATE, new NoteCache(RATE, 1 << 20));
+        int frames = theme.getLengthFrames() * 2 + 1000; // across the loop point twice
+        int[] expected = render(theme, frames, 1);
+        for (int block : new int[] { 7, 192, 256, 4096 }) {
+            assertArrayEquals("block " + block, expected, render(theme, frames, block));
+        }
+    }
+
+    @Test
+    public void noteOnAndOffAreSampleExact() {
+        // 10 ms at 48 kHz is 480 frames; the second note overlaps the first.
+        Pattern pattern = new Pattern(NoteCache.WAVE_SINE, 0.5f, false, 40,
+                new double[] { 440.0, 660.0 }, new int[] { 10, 15 }, new int[] { 10, 20 });
+        Sequencer.Sequence sequence = new Sequencer.Sequence(pattern, RATE, new NoteCache(RATE, 1 << 20));
+        assertEquals(1920, sequence.getLengthFrames());
+
+        int[] out = render(sequence, 2000, 192);
+        for (int i = 0; i < 480; i++) {
+            assertEquals(0, out[i]);
+        }
+        // A sine starts at 0, so look at the frame after each note-on.
+        assertNotEquals(0, out[481]);
+        for (int i = 1680; i < 2000; i++) {
+            assertEquals(0, out[i]);
+        }
+
+        Sequencer sequencer = new Sequencer();
+        sequencer.start(sequence);
+        sequencer.render(new int[2000], 2000);
+        assertFalse(sequencer.isActive());
+    }
+
+    @Test
+    public void playsTheSameAfterTheCacheEvictsItsNotes() {
+        Sequencer.Sequence kept = new Sequencer.Sequence(AudioMixer.HEALING_THEME, RATE, new NoteCache(RATE, 1 << 20));
+        // Room for about one note, so every note-on renders it again.
+        NoteCache tiny = new NoteCache(RATE, 16 * 1024);
+        Sequencer.Sequence evicted = new Sequencer.Sequence(AudioMixer.HEALING_THEME, RATE, tiny);
+        assertEquals(1, tiny.size());
+
+        int frames = kept.getLengthFrames() + 1000;
+        assertArrayEquals(render(kept, frames, 192), render(evicted, frames, 192));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notesMustStartInsideThePattern() {
+        new Pattern(NoteCache.WAVE_SINE, 0.5f, false, 100, new double[] { 440.0 }, new int[] { 100 }, new int[] { 10 });
+    }
+}
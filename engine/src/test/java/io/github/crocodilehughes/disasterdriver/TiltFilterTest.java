@@ -0,0 +1,211 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TiltFilterTest {
+
+    private static final double G = 9.81;
+    private static final int ACCEL = 0;
+    private static final int GYRO = 1;
+
+    /**
+     * A sensor trace in the form the device delivers it: (time ms, sensor, value,
+     * value) rows, accelerometer x/y or gyroscope z rate, in timestamp order.
+     */
+    private static final class Trace {
+        final List<double[]> rows = new ArrayList<>();
+        final Random noise = new Random(42);
+
+        /** The phone held still or moving along angleDegrees(t), sampled at 200 Hz per sensor. */
+        Trace hold(double fromMs, double toMs, Angle angle, double accelNoise, double gyroBias) {
+            for (double t = fromMs; t < toMs; t += 5) {
+                double radians = Math.toRadians(angle.at(t));
+                rows.add(new double[] { t, ACCEL, -G * Math.sin(radians) + noise.nextGaussian() * accelNoise,
+                        G * Math.cos(radians) + noise.nextGaussian() * accelNoise });
+                // Counter-clockwise positive, so a clockwise turn reads negative.
+                double rate = -Math.toRadians(angle.at(t + 2.5) - angle.at(t - 2.5)) / 0.005;
+                rows.add(new double[] { t + 2.5, GYRO, rate + gyroBias, 0 });
+            }
+            return this;
+        }
+
+        void play(TiltFilter filter, double untilMs) {
+            for (double[] row : rows) {
+                if (row[0] >= untilMs)
+                    break;
+                long nanos = (long) (row[0] * 1_000_000);
+                if (row[1] == ACCEL) {
+                    filter.onAccelerometer(nanos, (float) row[2], (float) row[3]);
+                } else {
+                    filter.onGyroscope(nanos, (float) row[2]);
+                }
+            }
+        }
+    }
+
+    private interface Angle {
+        double at(double ms);
+    }
+
+    private static Angle constant(final double degrees) {
+        return new Angle() {
+            @Override
+            public double at(double ms) {
+                return degrees;
+            }
+        };
+    }
+
+    @Test
+    public void settlesOnASteadyTiltThroughTheNoise() {
+        Trace trace = new Trace().hold(0, 2000, constant(20), 0.8, 0);
+        TiltFilter filter = new TiltFilter();
+        trace.play(filter, 2000);
+        assertEquals(20, filter.getAngleDegrees(), 1.5);
+        assertEquals(TiltFilter.toTilt(20), filter.getTilt(), 4);
+        assertTrue(filter.getTilt() > 0);
+    }
+
+    @Test
+    public void gyroDriftDoesNotBuildUp() {
+        // A badly biased gyro on a phone held still and upright for a minute.
+        Trace trace = new Trace().hold(0, 60_000, constant(0), 0.3, 0.05);
+        TiltFilter filter = new TiltFilter();
+        trace.play(filter, 60_000);
+        assertEquals(0, filter.getAngleDegrees(), TiltFilter.DEAD_ZONE_DEGREES);
+        assertEquals(0, filter.getTilt());
+    }
+
+    @Test
+    public void followsAQuickTurnWithoutWaitingForGravity() {
+        // Upright, then a 30 degree turn to the left over 100 ms.
+        Angle turn = new Angle() {
+            @Override
+            public double at(double ms) {
+                return ms < 500 ? 0 : ms > 600 ? -30 : -30 * (ms - 500) / 100;
+            }
+        };
+        Trace trace = new Trace().hold(0, 1000, turn, 0.8, 0);
+        TiltFilter filter = new TiltFilter();
+        trace.play(filter, 605);
+        // The accelerometer alone would still be well short, a time constant behind.
+        assertEquals(-30, filter.getAngleDegrees(), 3);
+        assertEquals(-GameWorld.TILT_FULL_SCALE, filter.getTilt());
+
+        TiltFilter accelOnly = new TiltFilter();
+        Trace gravity = new Trace();
+        for (double[] row : trace.rows) {
+            if (row[1] == ACCEL) {
+                gravity.rows.add(row);
+            }
+        }
+        gravity.play(accelOnly, 605);
+        assertTrue(accelOnly.getAngleDegrees() > -20);
+    }
+
+    @Test
+    public void lyingFlatKeepsTheLastAngle() {
+        TiltFilter filter = new TiltFilter();
+        new Trace().hold(0, 1000, constant(15), 0, 0).play(filter, 1000);
+        int tilt = filter.getTilt();
+        filter.onAccelerometer(1_000_000_000L, 0.1f, -0.2f);
+        filter.onAccelerometer(1_005_000_000L, -0.2f, 0.1f);
+        assertEquals(tilt, filter.getTilt());
+    }
+
+    @Test
+    public void deadZoneAndFullLock() {
+        assertEquals(0, TiltFilter.toTilt(0));
+        assertEquals(0, TiltFilter.toTilt(TiltFilter.DEAD_ZONE_DEGREES));
+        assertEquals(0, TiltFilter.toTilt(-TiltFilter.DEAD_ZONE_DEGREES));
+        assertEquals(GameWorld.TILT_FULL_SCALE, TiltFilter.toTilt(TiltFilter.FULL_TILT_DEGREES));
+        assertEquals(GameWorld.TILT_FULL_SCALE, TiltFilter.toTilt(80));
+        assertEquals(-GameWorld.TILT_FULL_SCALE, TiltFilter.toTilt(-80));
+        double halfway = (TiltFilter.DEAD_ZONE_DEGREES + TiltFilter.FULL_TILT_DEGREES) / 2;
+        assertEquals(GameWorld.TILT_FULL_SCALE / 2, TiltFilter.toTilt(halfway));
+        assertEquals(-GameWorld.TILT_FULL_SCALE / 2, TiltFilter.toTilt(-halfway));
+    }
+
+    @Test
+    public void latestTiltReachesTheTickThread() throws Exception {
+        final TiltFilter filter = new TiltFilter();
+        final Trace trace = new Trace().hold(0, 3000, constant(-25), 0.5, 0);
+        Thread sensor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                trace.play(filter, 3000);
+            }
+        }, "TestSensor");
+        sensor.start();
+        // Whatever the tick reads mid-stream is a whole value in range.
+        while (sensor.isAlive()) {
+            int tilt = filter.getTilt();
+            assertTrue(tilt <= 0 && tilt >= -GameWorld.TILT_FULL_SCALE);
+        }
+        sensor.join();
+        assertEquals(TiltFilter.toTilt(-25), filter.getTilt(), 4);
+    }
+
+    /**
+     * Replays tilt_steering.csv: raw sensor events, in the form TiltSensor gets
+     * them, for a phone held in portrait 40 degrees back from vertical, with hand
+     * tremor, gyro bias and the odd late batch. Fed in the way TiltSensor does
+     * for ROTATION_0; a capture from a device in the same format drops straight
+     * in. Returns the tilt at each of the given times, in seconds from the first
+     * event.
+     */
+    private static int[] replaySensorFile(double... atSeconds) throws IOException {
+        TiltFilter filter = new TiltFilter();
+        int[] tilts = new int[atSeconds.length];
+        int next = 0;
+        long start = -1;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                TiltFilterTest.class.getResourceAsStream("tilt_steering.csv"), StandardCharsets.US_ASCII))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.startsWith("#"))
+                    continue;
+                String[] fields = line.split(",");
+                long nanos = Long.parseLong(fields[0]);
+                if (start < 0) {
+                    start = nanos;
+                }
+                while (next < atSeconds.length && nanos - start >= (long) (atSeconds[next] * 1e9)) {
+                    tilts[next++] = filter.getTilt();
+                }
+                if (fields[1].equals("A")) {
+                    filter.onAccelerometer(nanos, Float.parseFloat(fields[2]), Float.parseFloat(fields[3]));
+                } else {
+                    filter.onGyroscope(nanos, Float.parseFloat(fields[4]));
+                }
+            }
+        }
+        assertEquals("trace ends too soon", atSeconds.length, next);
+        return tilts;
+    }
+
+    @Test
+    public void sensorFileSteersRightThenLeft() throws IOException {
+        int[] tilts = replaySensorFile(0.9, 2.2, 2.5, 3.7, 5.0, 5.3, 6.4);
+        // Held upright: the tremor stays inside the dead zone.
+        assertEquals(0, tilts[0]);
+        // About 25 degrees right.
+        assertEquals(TiltFilter.toTilt(25), tilts[1], 6);
+        assertEquals(TiltFilter.toTilt(25), tilts[2], 6);
+        assertEquals(0, tilts[3]);
+        // Past full lock to the left.
+        assertEquals(-GameWorld.TILT_FULL_SCALE, tilts[4]);
+        assertEquals(-GameWorld.TILT_FULL_SCALE, tilts[5]);
+        // Not quite back to centre, but inside the dead zone.
+        assertEquals(0, tilts[6]);
+    }
+}
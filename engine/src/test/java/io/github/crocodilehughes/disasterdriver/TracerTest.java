@@ -0,0 +1,168 @@
+package io.github.crocodilehughes.disasterdriver;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.*;
+
+public class TracerTest {
+
+    @After
+    public void tearDown() {
+        Tracer.setEnabled(false);
+    }
+
+    private static String export(long since) throws IOException {
+        StringWriter out = new StringWriter();
+        Tracer.writeChromeJson(out, since);
+        return out.toString();
+    }
+
+    private static int count(String json, String needle) {
+        int n = 0;
+        for (int i = json.indexOf(needle); i >= 0; i = json.indexOf(needle, i + 1)) {
+            n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void exportsSectionsAndCountersFromEveryThread() throws Exception {
+        long since = System.nanoTime();
+        Tracer.setEnabled(true);
+        Thread audio = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    Tracer.begin("test.audio");
+                    Tracer.counter("test.buffer", i);
+                    Tracer.end();
+                }
+            }
+        }, "TestAudio");
+        audio.start();
+        for (int i = 0; i < 5; i++) {
+            Tracer.begin("test.tick");
+            Tracer.begin("test.step");
+            Tracer.end();
+            Tracer.end();
+        }
+        audio.join();
+
+        String json = export(since);
+        assertTrue(json, json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(json, json.endsWith("]}\n"));
+        assertTrue(json, json.contains("\"args\":{\"name\":\"TestAudio\"}"));
+        assertEquals(10, count(json, "\"name\":\"test.audio\""));
+        assertEquals(10, count(json, "\"name\":\"test.buffer\""));
+        assertEquals(5, count(json, "\"name\":\"test.tick\""));
+        assertEquals(5, count(json, "\"name\":\"test.step\""));
+        assertEquals(count(json, "\"ph\":\"B\""), count(json, "\"ph\":\"E\""));
+        assertTrue(json, json.contains("\"args\":{\"value\":9}"));
+        // Timestamps are microseconds with the nanoseconds kept as decimals.
+        Matcher ts = java.util.regex.Pattern.compile("\"ts\":\\d+\\.\\d{3}[,}]").matcher(json);
+        assertTrue(json, ts.find());
+    }
+
+    @Test
+    public void recordsNothingWhileDisabled() throws Exception {
+        long since = System.nanoTime();
+        Tracer.begin("test.disabled");
+        Tracer.counter("test.disabled", 1);
+        Tracer.end();
+        assertFalse(export(since).contains("test.disabled"));
+    }
+
+    @Test
+    public void wrappedRingStaysBalanced() throws Exception {
+        long since = System.nanoTime();
+        Tracer.setEnabled(true);
+        // The outer begin gets overwritten, leaving its end without a start.
+        Tracer.begin("test.outer");
+        for (int i = 0; i < Tracer.RING_CAPACITY; i++) {
+            Tracer.begin("test.inner");
+            Tracer.end();
+        }
+        Tracer.end();
+        Tracer.setEnabled(false);
+
+        String json = export(since);
+        assertEquals(0, count(json, "test.outer"));
+        assertEquals(count(json, "\"ph\":\"B\""), count(json, "\"ph\":\"E\""));
+        assertTrue(count(json, "test.inner") >= Tracer.RING_CAPACITY / 2 - 1);
+    }
+
+    @Test
+    public void exitedThreadsAreExportedOnceThenDropped() throws Exception {
+        long since = System.nanoTime();
+        Tracer.setEnabled(true);
+        Thread exited = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Tracer.begin("test.exited");
+                Tracer.end();
+            }
+        }, "TestExited");
+        exited.start();
+        exited.join();
+        Thread released = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Tracer.begin("test.released");
+                Tracer.end();
+                Tracer.releaseThread();
+            }
+        }, "TestReleased");
+        released.start();
+        released.join();
+
+        String json = export(since);
+        assertEquals(1, count(json, "\"name\":\"test.exited\""));
+        assertEquals(1, count(json, "\"name\":\"test.released\""));
+        json = export(since);
+        assertFalse(json, json.contains("TestExited"));
+        assertFalse(json, json.contains("TestReleased"));
+    }
+
+    @Test
+    public void ringsOfExitedThreadsDontPileUp() throws Exception {
+        Tracer.setEnabled(true);
+        for (int i = 0; i < Tracer.MAX_RINGS * 3; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Tracer.counter("test.pileUp", 1);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        // Nothing exported in between, yet only up to MAX_RINGS are ever held.
+        String json = export(0);
+        assertTrue(json, count(json, "\"name\":\"test.pileUp\"") <= Tracer.MAX_RINGS);
+    }
+
+    @Test
+    public void threadCanAskForABiggerRing() throws Exception {
+        final long since = System.nanoTime();
+        Tracer.setEnabled(true);
+        Thread busy = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Tracer.setThreadCapacity(Tracer.RING_CAPACITY * 4);
+                for (int i = 0; i < Tracer.RING_CAPACITY; i++) {
+                    Tracer.begin("test.busy");
+                    Tracer.end();
+                }
+            }
+        }, "TestBusy");
+        busy.start();
+        busy.join();
+
+        assertEquals(Tracer.RING_CAPACITY, count(export(since), "\"name\":\"test.busy\""));
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "Disaster Driver"
 include(":app")
+include(":engine")